@@ -1,6 +1,7 @@
 package com.mywatermark;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -8,9 +9,20 @@ import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.logging.Logger;
 
 public class App extends Application {
 
+    private static final Logger logger = Logger.getLogger(App.class.getName());
+
+    /**
+     * Passed by the build when recording the AppCDS archive: the window is shown once so the
+     * startup classes get loaded, then the application exits.
+     */
+    static final String CDS_TRAINING_ARG = "--cds-training";
+
     @Override
     public void start(Stage primaryStage) throws IOException {
         URL fxmlLocation = getClass().getResource("/com/mywatermark/main-view.fxml");
@@ -18,7 +30,9 @@ public class App extends Application {
             System.err.println("Cannot find FXML file. Please check the path.");
             return;
         }
-        Parent root = FXMLLoader.load(fxmlLocation);
+        FXMLLoader loader = new FXMLLoader(fxmlLocation);
+        Parent root = loader.load();
+        MainViewController controller = loader.getController();
         Scene scene = new Scene(root, 1024, 768);
         URL cssLocation = getClass().getResource("/com/mywatermark/dark-theme.css");
         if (cssLocation != null) {
@@ -28,9 +42,27 @@ public class App extends Application {
         }
         primaryStage.setTitle("Photo Watermark Tool");
         primaryStage.setScene(scene);
+        primaryStage.setOnShown(e -> {
+            reportStartupTime();
+            controller.loadDeferredResources();
+            if (getParameters().getRaw().contains(CDS_TRAINING_ARG)) {
+                Platform.runLater(Platform::exit);
+            }
+        });
         primaryStage.show();
     }
 
+    private static void reportStartupTime() {
+        ProcessHandle.current().info().startInstant().ifPresent(jvmStart -> {
+            long millis = Duration.between(jvmStart, Instant.now()).toMillis();
+            // HotSpot reports "sharing" in java.vm.info when any archive is mapped, the JDK's own
+            // included; a rejected -XX:SharedArchiveFile is reported by the JVM itself at startup
+            boolean sharing = System.getProperty("java.vm.info", "").contains("sharing");
+            logger.info("Startup: main window shown " + millis + " ms after JVM start (class data sharing "
+                    + (sharing ? "on" : "off") + ").");
+        });
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,84 @@
+package com.mywatermark;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Seekable {@link javax.imageio.stream.ImageOutputStream} that encodes into a single growing
+ * byte array.
+ * <p>
+ * {@link javax.imageio.stream.MemoryCacheImageOutputStream} over a
+ * {@link java.io.ByteArrayOutputStream} holds the encoded image twice: once in its cache and
+ * once in the target it flushes to. Here the array the encoder seeks around in is the result.
+ */
+final class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int count;
+
+    @Override
+    public void write(int b) throws IOException {
+        checkClosed();
+        flushBits();
+        ensureCapacity(streamPos + 1);
+        buffer[(int) streamPos++] = (byte) b;
+        count = Math.max(count, (int) streamPos);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        flushBits();
+        ensureCapacity(streamPos + len);
+        System.arraycopy(b, off, buffer, (int) streamPos, len);
+        streamPos += len;
+        count = Math.max(count, (int) streamPos);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        return streamPos < count ? buffer[(int) streamPos++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= count) return -1;
+        int n = (int) Math.min(len, count - streamPos);
+        System.arraycopy(buffer, (int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return count;
+    }
+
+    /** Bytes written so far; only valid until the stream is written to again. */
+    int size() {
+        return count;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed > Integer.MAX_VALUE - 8) {
+            throw new IOException("Encoded image larger than 2 GB");
+        }
+        if (needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * buffer.length)));
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.mywatermark;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shards an export batch across several worker JVMs.
+ * <p>
+ * The coordinator listens on a TCP socket and spawns {@link ExportWorker} processes on the
+ * local host; workers on other hosts can join the same batch by connecting to the listen
+ * address (sources and output directory must then be on a shared filesystem). Each worker
+ * owns a deque of tasks: it takes from the head of its own deque and, once that is empty,
+ * steals from the tail of the fullest other deque. Workers send heartbeats while they are
+ * busy; a worker that disconnects or stays silent past {@link #HEARTBEAT_TIMEOUT_MS} is
+ * dropped and its unfinished tasks are handed to the remaining workers. A worker that runs out of
+ * memory on a file answers {@code RETRY}, and the file goes to another worker, which may have
+ * more heap to spare, up to {@link #MAX_ATTEMPTS} times in all. Only the first result for a task
+ * counts; a late one from a worker that was given up on is ignored.
+ * <p>
+ * A worker proves it belongs to the batch with a shared token in its HELLO; anyone else who
+ * connects would otherwise be sent the job and the paths of the files. Local workers get a random
+ * per-batch token in the {@value #TOKEN_ENV} environment variable. Listening on anything but
+ * a loopback address requires a token set with {@code -Dwatermark.distributed.token}, which
+ * workers on other hosts are given in the same environment variable.
+ * <p>
+ * Wire protocol (one UTF-8 line per message, fields separated by tabs):
+ * <pre>
+ * worker → HELLO id token      coordinator → CONFIG json
+ * worker → NEXT                coordinator → TASK taskId path | WAIT | BYE
+ * worker → RESULT taskId OK|FAIL|RETRY bytes millis message
+ * worker → HEARTBEAT
+ * </pre>
+ */
+final class DistributedExportCoordinator {
+
+    private static final Logger logger = Logger.getLogger(DistributedExportCoordinator.class.getName());
+
+    static final long HEARTBEAT_INTERVAL_MS = 2000;
+    static final long HEARTBEAT_TIMEOUT_MS = 15000;
+    static final int MAX_ATTEMPTS = 3;
+
+    /** Optional overrides so workers on other hosts can reach the coordinator. */
+    static final String BIND_PROPERTY = "watermark.distributed.bind";
+    static final String PORT_PROPERTY = "watermark.distributed.port";
+    static final String TOKEN_PROPERTY = "watermark.distributed.token";
+    /** Where workers find the token to send in their HELLO. */
+    static final String TOKEN_ENV = "WATERMARK_DISTRIBUTED_TOKEN";
+
+    /** Job description sent to every worker as the CONFIG message. */
+    public static class JobConfig {
+        public WatermarkSettings settings;
+        public ExportOptions options;
+        public String outputDir;
+    }
+
+    static final class WorkerStats {
+        int tasks;
+        int failures;
+        long bytes;
+        long busyMillis;
+        int stolen;
+        boolean lost;
+    }
+
+    static final class Report {
+        int succeeded;
+        int failed;
+        int reassigned;
+        long bytes;
+        long elapsedMillis;
+        final Map<String, WorkerStats> workers = new LinkedHashMap<>();
+        final List<String> failures = new ArrayList<>();
+
+        String summary() {
+            StringBuilder sb = new StringBuilder(String.format(
+                    "Export complete!\n\nSuccessful: %d\nFailed: %d\nWorkers: %d\nReassigned tasks: %d\nTime: %.1f s",
+                    succeeded, failed, workers.size(), reassigned, elapsedMillis / 1000.0));
+            workers.forEach((id, stats) -> sb.append(String.format("\n  %s: %d file(s), %d stolen, %.1f MB%s",
+                    id, stats.tasks, stats.stolen, stats.bytes / (1024.0 * 1024.0), stats.lost ? " (lost)" : "")));
+            return sb.toString();
+        }
+    }
+
+    private static final class Task {
+        final int id;
+        final File file;
+        int attempts;
+        // Workers that ran out of memory on this file, so it is offered to others first
+        final Set<Session> outOfMemory = new HashSet<>();
+
+        Task(int id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+    }
+
+    private final class Session {
+        final String workerId;
+        final Socket socket;
+        final Deque<Task> queue = new ArrayDeque<>();
+        final WorkerStats stats = new WorkerStats();
+        volatile long lastSeen = System.currentTimeMillis();
+        Task inFlight;
+        boolean lost;
+
+        Session(String workerId, Socket socket) {
+            this.workerId = workerId;
+            this.socket = socket;
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final File outputDir;
+    private final WatermarkSettings settings;
+    private final ExportOptions options;
+    private final int localWorkers;
+    private final long heartbeatTimeoutMs;
+    private String token;
+
+    // All mutable scheduling state below is guarded by "this"
+    private final Deque<Task> unassigned = new ArrayDeque<>();
+    private final Deque<Task> orphans = new ArrayDeque<>();
+    private final List<Session> sessions = new ArrayList<>();
+    private final boolean[] resolved;
+    private final Report report = new Report();
+    private int resolvedCount;
+    private ExportProgress progress;
+
+    DistributedExportCoordinator(List<File> files, File outputDir, WatermarkSettings settings, ExportOptions options, int localWorkers) {
+        this(files, outputDir, settings, options, localWorkers, HEARTBEAT_TIMEOUT_MS);
+    }
+
+    DistributedExportCoordinator(List<File> files, File outputDir, WatermarkSettings settings, ExportOptions options,
+                                 int localWorkers, long heartbeatTimeoutMs) {
+        for (int i = 0; i < files.size(); i++) {
+            tasks.add(new Task(i, files.get(i)));
+        }
+        this.outputDir = outputDir;
+        this.settings = settings;
+        this.options = options;
+        this.localWorkers = localWorkers;
+        this.heartbeatTimeoutMs = heartbeatTimeoutMs;
+        this.resolved = new boolean[files.size()];
+    }
+
+    Report run(ExportProgress progress) throws IOException, InterruptedException {
+        this.progress = progress;
+        long start = System.currentTimeMillis();
+        unassigned.addAll(tasks);
+
+        InetAddress bindAddress = InetAddress.getByName(System.getProperty(BIND_PROPERTY, "127.0.0.1"));
+        int port = Integer.getInteger(PORT_PROPERTY, 0);
+        token = System.getProperty(TOKEN_PROPERTY, "");
+        if (token.isEmpty()) {
+            if (!bindAddress.isLoopbackAddress()) {
+                throw new IOException("Distributed export on " + bindAddress.getHostAddress()
+                        + " needs a shared worker token, set with -D" + TOKEN_PROPERTY);
+            }
+            byte[] secret = new byte[16];
+            new SecureRandom().nextBytes(secret);
+            token = HexFormat.of().formatHex(secret);
+        }
+        List<Process> processes = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(bindAddress, port));
+            logger.info("Distributed export listening on " + server.getLocalSocketAddress() + " for " + tasks.size() + " file(s).");
+
+            Thread acceptor = new Thread(() -> acceptLoop(server), "export-coordinator-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            String host = bindAddress.isAnyLocalAddress() ? "127.0.0.1" : bindAddress.getHostAddress();
+            for (int i = 0; i < localWorkers; i++) {
+                try {
+                    ProcessBuilder builder = new ProcessBuilder(workerCommand(host, server.getLocalPort()))
+                            .redirectErrorStream(true)
+                            .redirectOutput(ProcessBuilder.Redirect.INHERIT);
+                    // Not on the command line, where other users could read it
+                    builder.environment().put(TOKEN_ENV, token);
+                    processes.add(builder.start());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not start export worker process", e);
+                }
+            }
+
+            long idleSince = System.currentTimeMillis();
+            synchronized (this) {
+                while (resolvedCount < tasks.size()) {
+                    wait(Math.max(1, Math.min(1000, heartbeatTimeoutMs / 2)));
+                    long now = System.currentTimeMillis();
+                    for (Session session : sessions) {
+                        if (!session.lost && now - session.lastSeen > heartbeatTimeoutMs) {
+                            logger.warning("Export worker " + session.workerId + " missed its heartbeat; reassigning its tasks.");
+                            closeQuietly(session.socket);
+                            sessionLost(session);
+                        }
+                    }
+                    boolean anyLive = sessions.stream().anyMatch(s -> !s.lost) || processes.stream().anyMatch(Process::isAlive);
+                    if (anyLive) {
+                        idleSince = now;
+                    } else if (now - idleSince > heartbeatTimeoutMs) {
+                        logger.severe("No export workers left; failing the remaining files.");
+                        failRemaining("No export workers available");
+                    }
+                }
+            }
+        } finally {
+            for (Process process : processes) {
+                // Workers exit on BYE; only stragglers are killed
+                if (!process.waitFor(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+            synchronized (this) {
+                sessions.forEach(s -> closeQuietly(s.socket));
+            }
+        }
+
+        synchronized (this) {
+            report.elapsedMillis = System.currentTimeMillis() - start;
+            return report;
+        }
+    }
+
+    private void acceptLoop(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> handle(socket), "export-coordinator-session");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (SocketException e) {
+                return; // server closed
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to accept export worker connection", e);
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        Session session = null;
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            // A connection that never says HELLO must not hold this thread forever
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, heartbeatTimeoutMs));
+            String hello = in.readLine();
+            String[] helloParts = hello != null ? hello.split("\t", -1) : new String[0];
+            if (helloParts.length != 3 || !helloParts[0].equals("HELLO")) {
+                logger.warning("Rejecting export worker connection without HELLO from " + socket.getRemoteSocketAddress());
+                return;
+            }
+            if (!MessageDigest.isEqual(helloParts[2].getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+                logger.warning("Rejecting export worker connection with a wrong token from " + socket.getRemoteSocketAddress());
+                return;
+            }
+            socket.setSoTimeout(0);
+            session = register(helloParts[1], socket);
+
+            JobConfig config = new JobConfig();
+            config.settings = settings;
+            config.options = options;
+            config.outputDir = outputDir.getAbsolutePath();
+            send(out, "CONFIG\t" + new Gson().toJson(config));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                session.lastSeen = System.currentTimeMillis();
+                String[] parts = line.split("\t", -1);
+                switch (parts[0]) {
+                    case "HEARTBEAT" -> { }
+                    case "NEXT" -> {
+                        Task task = nextTask(session);
+                        if (task != null) {
+                            send(out, "TASK\t" + task.id + "\t" + task.file.getAbsolutePath());
+                        } else if (isFinished()) {
+                            send(out, "BYE");
+                            return;
+                        } else {
+                            send(out, "WAIT");
+                        }
+                    }
+                    case "RESULT" -> complete(session, Integer.parseInt(parts[1]), parts[2],
+                            Long.parseLong(parts[3]), Long.parseLong(parts[4]), parts.length > 5 ? parts[5] : "");
+                    default -> logger.warning("Unknown message from export worker " + session.workerId + ": " + parts[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            String worker = "export worker" + (session != null ? " " + session.workerId : "");
+            if (socket.isClosed() || isFinished()) {
+                // Closed from this side: the batch is done, or the worker missed its heartbeat
+                logger.fine("Connection to " + worker + " closed: " + e.getMessage());
+            } else {
+                logger.log(Level.WARNING, "Lost connection to " + worker, e);
+            }
+        } finally {
+            if (session != null) {
+                sessionLost(session);
+            }
+        }
+    }
+
+    private static void send(BufferedWriter out, String message) throws IOException {
+        out.write(message);
+        out.write('\n');
+        out.flush();
+    }
+
+    private synchronized Session register(String workerId, Socket socket) {
+        Session session = new Session(workerId, socket);
+        // Hand out an even shard of what is still unassigned among the workers we expect to arrive;
+        // anyone joining later starts empty and steals.
+        int expectedRemaining = Math.max(1, localWorkers - sessions.size());
+        int shard = (unassigned.size() + expectedRemaining - 1) / expectedRemaining;
+        for (int i = 0; i < shard; i++) {
+            session.queue.addLast(unassigned.pollFirst());
+        }
+        sessions.add(session);
+        report.workers.put(workerId, session.stats);
+        logger.info("Export worker " + workerId + " joined with " + shard + " file(s).");
+        return session;
+    }
+
+    private synchronized Task nextTask(Session session) {
+        if (session.lost) return null;
+        Task task = session.queue.pollFirst();
+        if (task == null) task = nextOrphan(session);
+        if (task == null) task = unassigned.pollFirst();
+        if (task == null) {
+            Session victim = null;
+            for (Session other : sessions) {
+                if (other != session && !other.lost && (victim == null || other.queue.size() > victim.queue.size())) {
+                    victim = other;
+                }
+            }
+            if (victim != null && !victim.queue.isEmpty()) {
+                task = victim.queue.pollLast();
+                session.stats.stolen++;
+            }
+        }
+        if (task != null) {
+            task.attempts++;
+            session.inFlight = task;
+            progress.fileStarted(task.id, task.file.getName());
+        }
+        return task;
+    }
+
+    /**
+     * The first orphaned task this worker has not run out of memory on, or failing that, one it
+     * has when every live worker has; the attempt limit ends that eventually.
+     */
+    private Task nextOrphan(Session session) {
+        Task fallback = null;
+        for (Task task : orphans) {
+            if (!task.outOfMemory.contains(session)) {
+                orphans.remove(task);
+                return task;
+            }
+            if (fallback == null && sessions.stream().allMatch(s -> s.lost || task.outOfMemory.contains(s))) {
+                fallback = task;
+            }
+        }
+        if (fallback != null) orphans.remove(fallback);
+        return fallback;
+    }
+
+    private synchronized void complete(Session session, int taskId, String status, long bytes, long millis, String message) {
+        Task task = session.inFlight;
+        session.inFlight = null;
+        // A task this worker no longer holds was given to another worker after it was given up on
+        if (task == null || task.id != taskId || resolved[taskId]) {
+            logger.fine("Ignoring stale result for task " + taskId + " from export worker " + session.workerId);
+            return;
+        }
+        session.stats.busyMillis += millis;
+        if (status.equals("RETRY")) {
+            task.outOfMemory.add(session);
+            if (task.attempts >= MAX_ATTEMPTS) {
+                session.stats.tasks++;
+                session.stats.failures++;
+                resolve(task, false, 0, message + " in " + task.attempts + " attempts");
+            } else {
+                logger.warning("Export worker " + session.workerId + " ran out of memory on "
+                        + task.file.getAbsolutePath() + "; handing it to another worker.");
+                orphans.addFirst(task);
+                report.reassigned++;
+                notifyAll();
+            }
+            return;
+        }
+        session.stats.tasks++;
+        if (status.equals("OK")) {
+            session.stats.bytes += bytes;
+            report.bytes += bytes;
+            resolve(task, true, bytes, null);
+        } else {
+            session.stats.failures++;
+            logger.warning("Export worker " + session.workerId + " failed " + task.file.getAbsolutePath() + ": " + message);
+            resolve(task, false, 0, message);
+        }
+    }
+
+    private synchronized void sessionLost(Session session) {
+        if (session.lost) return;
+        session.lost = true;
+        session.stats.lost = !isFinished();
+        Task inFlight = session.inFlight;
+        session.inFlight = null;
+        if (inFlight != null && !resolved[inFlight.id]) {
+            if (inFlight.attempts >= MAX_ATTEMPTS) {
+                resolve(inFlight, false, 0, "Worker lost " + inFlight.attempts + " times while processing this file");
+            } else {
+                orphans.addFirst(inFlight);
+                report.reassigned++;
+            }
+        }
+        report.reassigned += session.queue.size();
+        orphans.addAll(session.queue);
+        session.queue.clear();
+        notifyAll();
+    }
+
+    private void resolve(Task task, boolean ok, long bytes, String message) {
+        resolved[task.id] = true;
+        resolvedCount++;
+        if (ok) {
+            report.succeeded++;
+        } else {
+            report.failed++;
+            report.failures.add(task.file.getName() + ": " + message);
+        }
+        progress.fileFinished(task.id, ok, task.file.length(), bytes);
+        notifyAll();
+    }
+
+    private void failRemaining(String message) {
+        for (Task task : tasks) {
+            if (!resolved[task.id]) {
+                resolve(task, false, 0, message);
+            }
+        }
+        unassigned.clear();
+        orphans.clear();
+    }
+
+    private synchronized boolean isFinished() {
+        return resolvedCount >= tasks.size();
+    }
+
+    /**
+     * Builds the command line for a worker JVM that reuses this JVM's java binary and
+     * class/module path, so workers run exactly the code the coordinator runs.
+     */
+    static List<String> workerCommand(String host, int port) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Djava.awt.headless=true");
+        String modulePath = System.getProperty("jdk.module.path");
+        String classPath = System.getProperty("java.class.path");
+        if (modulePath != null && !modulePath.isEmpty()) {
+            command.add("--module-path");
+            command.add(modulePath);
+        }
+        if (ExportWorker.class.getModule().isNamed()) {
+            if (classPath != null && !classPath.isEmpty()) {
+                command.add("-cp");
+                command.add(classPath);
+            }
+            command.add("-m");
+            command.add(ExportWorker.class.getModule().getName() + "/" + ExportWorker.class.getName());
+        } else {
+            if (modulePath != null && !modulePath.isEmpty()) {
+                command.add("--add-modules");
+                command.add("ALL-MODULE-PATH");
+            }
+            command.add("-cp");
+            command.add(classPath);
+            command.add(ExportWorker.class.getName());
+        }
+        command.add(host + ":" + port);
+        return command;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.mywatermark;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a handful of EXIF tags from JPEG (APP1) and PNG ({@code eXIf}) files without decoding
+ * the image, for watermark text patterns and orientation handling.
+ * <p>
+ * Only the header of the file is read: parsing stops at the first JPEG scan or PNG image data.
+ * Unknown tags, MakerNotes and thumbnails are ignored, and malformed EXIF yields an empty map
+ * rather than an exception, since a watermark should never fail because of broken metadata.
+ * Lengths and counts from the file are checked against the data actually present before
+ * anything is allocated for them.
+ */
+final class ExifReader {
+
+    private static final Map<Integer, String> TAGS = Map.of(
+            0x010F, "Make",
+            0x0110, "Model",
+            0x0112, "Orientation",
+            0x0132, "DateTime",
+            0x013B, "Artist",
+            0x8298, "Copyright",
+            0x8827, "ISO",
+            0x9003, "DateTimeOriginal",
+            0xA434, "LensModel");
+    private static final int EXIF_IFD_POINTER = 0x8769;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private ExifReader() {
+    }
+
+    /**
+     * Returns the known tags found in the file, keyed by their EXIF names such as
+     * {@code "Artist"} or {@code "DateTimeOriginal"}. Numeric tags are returned in decimal.
+     */
+    static Map<String, String> read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /** Like {@link #read(File)} for an image that is not on disk, e.g. an upload. Does not close {@code in}. */
+    static Map<String, String> read(InputStream in) throws IOException {
+        try {
+            byte[] tiff = findTiffBlock(new DataInputStream(new BufferedInputStream(in)));
+            return tiff != null ? parseTiff(tiff) : Map.of();
+        } catch (EOFException | RuntimeException e) {
+            return Map.of(); // truncated or corrupt header
+        }
+    }
+
+    /** The EXIF orientation (1 to 8) of a file, or 1 when it has none. */
+    static int orientation(File file) throws IOException {
+        return orientation(read(file));
+    }
+
+    /** The orientation among tags returned by {@link #read}, or 1 when there is none. */
+    static int orientation(Map<String, String> exif) {
+        try {
+            int value = Integer.parseInt(exif.getOrDefault("Orientation", "1"));
+            return value >= 1 && value <= 8 ? value : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /** Returns the raw TIFF-structured EXIF block of a JPEG or PNG stream, or {@code null}. */
+    static byte[] findTiffBlock(DataInputStream in) throws IOException {
+        int first = in.readUnsignedByte();
+        int second = in.readUnsignedByte();
+        if (first == 0xFF && second == 0xD8) {
+            return findInJpeg(in);
+        }
+        if (first == (PNG_SIGNATURE[0] & 0xFF) && second == PNG_SIGNATURE[1]) {
+            in.skipNBytes(PNG_SIGNATURE.length - 2);
+            return findInPng(in);
+        }
+        return null;
+    }
+
+    private static byte[] findInJpeg(DataInputStream in) throws IOException {
+        while (true) {
+            int marker = in.readUnsignedByte();
+            if (marker != 0xFF) return null;
+            int type = in.readUnsignedByte();
+            while (type == 0xFF) type = in.readUnsignedByte(); // fill bytes
+            if (type == 0xDA || type == 0xD9) return null;     // start of scan, end of image
+            if (type >= 0xD0 && type <= 0xD7) continue;        // restart markers carry no length
+            int length = in.readUnsignedShort() - 2;
+            if (length < 0) return null;
+            if (type == 0xE1 && length > 6) {
+                byte[] segment = in.readNBytes(length);
+                if (new String(segment, 0, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+                    byte[] tiff = new byte[segment.length - 6];
+                    System.arraycopy(segment, 6, tiff, 0, tiff.length);
+                    return tiff;
+                }
+            } else {
+                in.skipNBytes(length);
+            }
+        }
+    }
+
+    private static byte[] findInPng(DataInputStream in) throws IOException {
+        while (true) {
+            int length = in.readInt();
+            if (length < 0) return null;
+            String type = new String(in.readNBytes(4), StandardCharsets.ISO_8859_1);
+            if (type.equals("eXIf")) {
+                // readNBytes grows its buffer as data arrives, so a bogus length cannot exhaust memory
+                byte[] data = in.readNBytes(length);
+                return data.length == length ? data : null;
+            }
+            if (type.equals("IDAT") || type.equals("IEND")) return null;
+            in.skipNBytes(length + 4L); // data and CRC
+        }
+    }
+
+    private static Map<String, String> parseTiff(byte[] tiff) {
+        Map<String, String> tags = new HashMap<>();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(tiff);
+            buffer.order(tiff[0] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            int ifd0 = buffer.getInt(4);
+            int exifIfd = readIfd(buffer, ifd0, tags);
+            if (exifIfd > 0) {
+                readIfd(buffer, exifIfd, tags);
+            }
+        } catch (RuntimeException e) {
+            // Truncated or corrupt EXIF; keep whatever was read before the bad offset
+        }
+        return tags;
+    }
+
+    /** Reads the known tags of one IFD and returns the Exif sub-IFD offset if it has one. */
+    private static int readIfd(ByteBuffer buffer, int offset, Map<String, String> tags) {
+        int count = buffer.getShort(offset) & 0xFFFF;
+        int exifIfd = -1;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = buffer.getShort(entry) & 0xFFFF;
+            int type = buffer.getShort(entry + 2) & 0xFFFF;
+            int components = buffer.getInt(entry + 4);
+            if (tag == EXIF_IFD_POINTER) {
+                exifIfd = buffer.getInt(entry + 8);
+                continue;
+            }
+            String name = TAGS.get(tag);
+            if (name == null) continue;
+            String value = switch (type) {
+                case 2 -> ascii(buffer, components <= 4 ? entry + 8 : buffer.getInt(entry + 8), components);
+                case 3 -> String.valueOf(buffer.getShort(entry + 8) & 0xFFFF);
+                case 4 -> String.valueOf(buffer.getInt(entry + 8) & 0xFFFFFFFFL);
+                default -> null;
+            };
+            if (value != null && !value.isEmpty()) {
+                tags.put(name, value);
+            }
+        }
+        return exifIfd;
+    }
+
+    private static String ascii(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || length > buffer.capacity() - offset) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        int end = 0;
+        while (end < bytes.length && bytes[end] != 0) end++;
+        return new String(bytes, 0, end, StandardCharsets.UTF_8).trim();
+    }
+}
@@ -0,0 +1,264 @@
+package com.mywatermark;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Single ZIP or TAR file that an export batch streams its encoded images into, instead of
+ * creating one file per image in the output folder.
+ * <p>
+ * Export threads encode in parallel and finish in any order, but entries are written in input
+ * order so the same batch always produces the same archive. Encoded images wait in a reorder
+ * buffer until every earlier index has been {@link #put put} or {@link #skip skipped}; once the
+ * buffer holds {@link #MAX_PENDING_BYTES}, threads that are ahead block until the straggler
+ * catches up. Every index must be put or skipped exactly once, or later entries are never written.
+ */
+abstract class ExportArchive implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ExportArchive.class.getName());
+
+    static final String FOLDER = "Folder";
+    static final String ZIP = "ZIP";
+    static final String TAR = "TAR";
+
+    static final long MAX_PENDING_BYTES = 256L * 1024 * 1024;
+
+    private record Entry(String name, byte[] data) { }
+
+    private final File file;
+    protected final long entryTime = System.currentTimeMillis();
+    private final Map<Integer, Entry> pending = new HashMap<>();
+    private final Set<String> names = new HashSet<>();
+    private long pendingBytes;
+    private int next;
+    private int written;
+    private IOException failure;
+
+    private ExportArchive(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a time-stamped archive in {@code outputDir} for the given sink, or returns
+     * {@code null} for {@link #FOLDER}, meaning one file per image.
+     */
+    static ExportArchive open(String sink, File outputDir) throws IOException {
+        if (sink == null || sink.equals(FOLDER)) return null;
+        String baseName = "watermarked-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        return switch (sink) {
+            case ZIP -> new Zip(new File(outputDir, baseName + ".zip"));
+            case TAR -> new Tar(new File(outputDir, baseName + ".tar"));
+            default -> throw new IOException("Unknown export sink: " + sink);
+        };
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getEntryCount() {
+        return written;
+    }
+
+    /**
+     * Hands over the encoded image for input {@code index}. May block while the reorder buffer
+     * is full and {@code index} is not the next one to be written, so the caller must not hold
+     * anything the thread exporting that index may wait for, such as a {@link MemoryBudget}
+     * reservation.
+     */
+    synchronized void put(int index, String name, byte[] data) throws IOException, InterruptedException {
+        while (index != next && !pending.isEmpty() && pendingBytes + data.length > MAX_PENDING_BYTES) {
+            wait();
+        }
+        pending.put(index, new Entry(name, data));
+        pendingBytes += data.length;
+        drain();
+        if (failure != null) {
+            throw new IOException("Could not write to " + file.getName() + ": " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Marks input {@code index} as failed so the entries after it are not held back. Does nothing
+     * if the index was already handed over, so callers can skip unconditionally on any error.
+     */
+    synchronized void skip(int index) {
+        if (index < next || pending.containsKey(index)) return;
+        pending.put(index, new Entry(null, null));
+        drain();
+    }
+
+    private void drain() {
+        try {
+            Entry entry;
+            while ((entry = pending.remove(next)) != null) {
+                next++;
+                if (entry.data() == null) continue;
+                pendingBytes -= entry.data().length;
+                if (failure != null) continue;
+                try {
+                    writeEntry(uniqueName(entry.name()), entry.data());
+                    written++;
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        } finally {
+            notifyAll();
+        }
+    }
+
+    /** Different source folders can produce the same output name; later ones get a counter. */
+    private String uniqueName(String name) {
+        if (names.add(name)) return name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        for (int i = 2; ; i++) {
+            String candidate = base + " (" + i + ")" + ext;
+            if (names.add(candidate)) return candidate;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!pending.isEmpty()) {
+            logger.warning(pending.size() + " encoded image(s) were never written to " + file.getName()
+                    + " because an earlier image did not finish.");
+            pending.clear();
+        }
+        finish();
+    }
+
+    protected abstract void writeEntry(String name, byte[] data) throws IOException;
+
+    /** Writes the archive trailer and closes the file. */
+    protected abstract void finish() throws IOException;
+
+    private static final class Zip extends ExportArchive {
+        private final ZipOutputStream zip;
+        private final CRC32 crc = new CRC32();
+
+        Zip(File file) throws IOException {
+            super(file);
+            zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+
+        @Override
+        protected void writeEntry(String name, byte[] data) throws IOException {
+            // JPEG and PNG data is already compressed, so deflating it again only costs CPU
+            crc.reset();
+            crc.update(data);
+            ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+            entry.setTime(entryTime);
+            zip.putNextEntry(entry);
+            zip.write(data);
+            zip.closeEntry();
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            zip.close();
+        }
+    }
+
+    /** Minimal POSIX ustar writer; names that do not fit the header get a PAX {@code path} record. */
+    private static final class Tar extends ExportArchive {
+        private static final int BLOCK = 512;
+
+        private final OutputStream out;
+
+        Tar(File file) throws IOException {
+            super(file);
+            out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        }
+
+        @Override
+        protected void writeEntry(String name, byte[] data) throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 100) {
+                writeRecord('x', "PaxHeader", paxPath(name));
+                nameBytes = truncate(nameBytes, 100);
+            }
+            writeRecord('0', nameBytes, data);
+        }
+
+        private void writeRecord(char type, String name, byte[] data) throws IOException {
+            writeRecord(type, name.getBytes(StandardCharsets.UTF_8), data);
+        }
+
+        private void writeRecord(char type, byte[] name, byte[] data) throws IOException {
+            byte[] header = new byte[BLOCK];
+            System.arraycopy(name, 0, header, 0, name.length);
+            octal(header, 100, 8, 0644);
+            octal(header, 108, 8, 0);
+            octal(header, 116, 8, 0);
+            octal(header, 124, 12, data.length);
+            octal(header, 136, 12, entryTime / 1000);
+            header[156] = (byte) type;
+            System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+            // The checksum is computed with its own field filled with spaces
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            long sum = 0;
+            for (byte b : header) sum += b & 0xFF;
+            octal(header, 148, 7, sum);
+
+            out.write(header);
+            out.write(data);
+            int padding = (BLOCK - data.length % BLOCK) % BLOCK;
+            out.write(new byte[padding]);
+        }
+
+        /** Zero-padded octal number followed by a NUL, as ustar header fields expect. */
+        private static void octal(byte[] header, int offset, int length, long value) throws IOException {
+            String digits = Long.toOctalString(value);
+            if (digits.length() > length - 1) {
+                throw new IOException("Value too large for a tar header: " + value);
+            }
+            String field = "0".repeat(length - 1 - digits.length()) + digits;
+            System.arraycopy(field.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+            header[offset + length - 1] = 0;
+        }
+
+        /** A PAX record is {@code "<length> path=<name>\n"} where the length counts its own digits. */
+        private static byte[] paxPath(String name) {
+            int body = (" path=" + name + "\n").getBytes(StandardCharsets.UTF_8).length;
+            int length = body + String.valueOf(body).length();
+            if (String.valueOf(length).length() != String.valueOf(body).length()) length++;
+            return (length + " path=" + name + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static byte[] truncate(byte[] bytes, int max) {
+            int end = max;
+            // Do not cut a multi-byte UTF-8 sequence in half
+            while (end > 0 && (bytes[end] & 0xC0) == 0x80) end--;
+            return Arrays.copyOf(bytes, end);
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            out.write(new byte[2 * BLOCK]);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.mywatermark;
+
+/**
+ * Output settings shared by every file of an export batch: format, quality, naming and whether
+ * the files go into the output folder or into a single archive there.
+ */
+public class ExportOptions {
+    public String format = "PNG";
+    public double quality = 80;
+    public String namingConvention = "Original";
+    public String prefixSuffix = "";
+    /** {@link ExportArchive#FOLDER}, {@link ExportArchive#ZIP} or {@link ExportArchive#TAR}. */
+    public String sink = ExportArchive.FOLDER;
+}
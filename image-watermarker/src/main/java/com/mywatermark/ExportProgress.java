@@ -0,0 +1,119 @@
+package com.mywatermark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free progress counters for an export batch.
+ * <p>
+ * Export threads only bump counters and add or remove their current file; nothing is
+ * formatted or posted to the FX thread per file. The UI samples {@link #snapshot()} at a fixed
+ * rate instead, so the cost of progress reporting does not grow with export throughput.
+ * <p>
+ * The time between {@link #fileStarted} and {@link #fileFinished} of every file is kept as
+ * well, for latency percentiles in the {@code ThroughputBenchmark} in the test sources.
+ */
+final class ExportProgress {
+
+    private final int total;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    // Keyed by the file's index in the batch, since files from different folders may share a name
+    private final Map<Integer, Started> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLongArray latencies;
+    private final AtomicInteger latencyCount = new AtomicInteger();
+
+    ExportProgress(int total) {
+        this.total = total;
+        this.latencies = new AtomicLongArray(total);
+    }
+
+    private record Started(String name, long nanos) { }
+
+    /** Marks file {@code index} of the batch as in progress; {@code name} is only for display. */
+    void fileStarted(int index, String name) {
+        inFlight.putIfAbsent(index, new Started(name, System.nanoTime()));
+    }
+
+    void fileFinished(int index, boolean success, long inputBytes, long outputBytes) {
+        Started started = inFlight.remove(index);
+        (success ? succeeded : failed).increment();
+        bytesRead.add(inputBytes);
+        bytesWritten.add(outputBytes);
+        if (started != null) {
+            int slot = latencyCount.getAndIncrement();
+            if (slot < latencies.length()) {
+                latencies.set(slot, System.nanoTime() - started.nanos());
+            }
+        }
+    }
+
+    /** Start-to-finish times in nanoseconds of the files finished so far, sorted ascending. */
+    long[] latencies() {
+        long[] values = new long[Math.min(latencyCount.get(), latencies.length())];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = latencies.get(i);
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    Snapshot snapshot() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return new Snapshot(total, (int) succeeded.sum(), (int) failed.sum(), bytesRead.sum(), bytesWritten.sum(),
+                elapsedNanos / 1_000_000, inFlight.values().stream().map(Started::name).sorted().limit(3).toList(), inFlight.size());
+    }
+
+    record Snapshot(int total, int succeeded, int failed, long bytesRead, long bytesWritten,
+                    long elapsedMillis, List<String> inFlightSample, int inFlightCount) {
+
+        int done() {
+            return succeeded + failed;
+        }
+
+        double fraction() {
+            return total == 0 ? 1 : (double) done() / total;
+        }
+
+        double filesPerSecond() {
+            return elapsedMillis == 0 ? 0 : done() * 1000.0 / elapsedMillis;
+        }
+
+        double megabytesPerSecond() {
+            return elapsedMillis == 0 ? 0 : bytesRead / (1024.0 * 1024.0) * 1000.0 / elapsedMillis;
+        }
+
+        /** Estimated seconds left at the average rate so far, or -1 before the first file is done. */
+        long etaSeconds() {
+            double rate = filesPerSecond();
+            return rate <= 0 ? -1 : Math.round((total - done()) / rate);
+        }
+
+        String format() {
+            StringBuilder sb = new StringBuilder(String.format("%d of %d  |  %.1f files/s  |  %.1f MB/s  |  ETA %s",
+                    done(), total, filesPerSecond(), megabytesPerSecond(), formatEta(etaSeconds())));
+            if (inFlightCount > 0) {
+                sb.append("\n").append(String.join(", ", inFlightSample));
+                if (inFlightCount > inFlightSample.size()) {
+                    sb.append(" +").append(inFlightCount - inFlightSample.size()).append(" more");
+                }
+            }
+            return sb.toString();
+        }
+
+        private static String formatEta(long seconds) {
+            if (seconds < 0) return "--:--";
+            return seconds >= 3600
+                    ? String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60)
+                    : String.format("%d:%02d", seconds / 60, seconds % 60);
+        }
+    }
+}
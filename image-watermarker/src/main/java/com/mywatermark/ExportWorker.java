@@ -0,0 +1,146 @@
+package com.mywatermark;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Export worker JVM for {@link DistributedExportCoordinator}.
+ * <p>
+ * Started by the coordinator on the local host, or by hand on another host with
+ * {@code java -cp <classpath> com.mywatermark.ExportWorker <coordinator-host>:<port>} and the
+ * coordinator's token in the {@code WATERMARK_DISTRIBUTED_TOKEN} environment variable.
+ * The worker pulls one file at a time, renders it with the batch settings received in the
+ * CONFIG message and reports the result; a background thread keeps sending heartbeats so a
+ * long-running file is not mistaken for a dead worker.
+ */
+public final class ExportWorker {
+
+    private static final Logger logger = Logger.getLogger(ExportWorker.class.getName());
+    private static final long WAIT_BACKOFF_MS = 250;
+
+    private final BufferedWriter out;
+
+    private ExportWorker(BufferedWriter out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 || !args[0].contains(":")) {
+            System.err.println("Usage: ExportWorker <coordinator-host>:<port>");
+            System.exit(2);
+        }
+        String token = System.getenv(DistributedExportCoordinator.TOKEN_ENV);
+        if (token == null || token.isEmpty()) {
+            System.err.println("Set " + DistributedExportCoordinator.TOKEN_ENV + " to the coordinator's worker token");
+            System.exit(2);
+        }
+        String host = args[0].substring(0, args[0].lastIndexOf(':'));
+        int port = Integer.parseInt(args[0].substring(args[0].lastIndexOf(':') + 1));
+        String workerId = ProcessHandle.current().pid() + "@" + InetAddress.getLocalHost().getHostName();
+
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            new ExportWorker(out).run(workerId, token, in);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Export worker " + workerId + " lost its coordinator", e);
+            System.exit(1);
+        }
+    }
+
+    private void run(String workerId, String token, BufferedReader in) throws IOException {
+        send("HELLO\t" + workerId + "\t" + token);
+        String configLine = in.readLine();
+        if (configLine == null || !configLine.startsWith("CONFIG\t")) {
+            // The coordinator closes the connection without a word when the token is wrong
+            throw new IOException("Expected CONFIG from coordinator but got: " + configLine);
+        }
+        DistributedExportCoordinator.JobConfig config =
+                new Gson().fromJson(configLine.substring(7), DistributedExportCoordinator.JobConfig.class);
+        File outputDir = new File(config.outputDir);
+
+        // A watermark that cannot be loaded fails every task with the same reason instead of killing the worker
+        WatermarkRenderer renderer = null;
+        String rendererError = null;
+        try {
+            renderer = new WatermarkRenderer(config.settings);
+        } catch (IOException e) {
+            rendererError = e.getMessage();
+        }
+        // Single-threaded, so every file after the first of a size decodes into the previous file's raster
+        RasterPool rasters = RasterPool.forHeap();
+
+        Thread heartbeat = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(DistributedExportCoordinator.HEARTBEAT_INTERVAL_MS);
+                    send("HEARTBEAT");
+                }
+            } catch (InterruptedException | IOException e) {
+                // the connection is gone or we are shutting down
+            }
+        }, "export-worker-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+
+        logger.info("Export worker " + workerId + " ready.");
+        while (true) {
+            send("NEXT");
+            String line = in.readLine();
+            if (line == null || line.equals("BYE")) break;
+            if (line.equals("WAIT")) {
+                try {
+                    Thread.sleep(WAIT_BACKOFF_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+            String[] parts = line.split("\t", 3);
+            if (!parts[0].equals("TASK") || parts.length < 3) {
+                throw new IOException("Unexpected message from coordinator: " + line);
+            }
+
+            long start = System.currentTimeMillis();
+            String result;
+            try {
+                if (renderer == null) throw new IOException(rendererError);
+                long bytes = ImageExporter.exportFile(new File(parts[2]), outputDir, renderer, config.options, rasters);
+                result = "OK\t" + bytes + "\t" + (System.currentTimeMillis() - start) + "\t";
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Export worker failed on " + parts[2], e);
+                result = "FAIL\t0\t" + (System.currentTimeMillis() - start) + "\t" + sanitize(String.valueOf(e.getMessage()));
+            } catch (OutOfMemoryError e) {
+                // The point of separate JVMs: one huge file only takes down this worker's attempt,
+                // and the coordinator hands it to another worker
+                rasters.clear();
+                result = "RETRY\t0\t" + (System.currentTimeMillis() - start) + "\tOut of memory";
+            }
+            send("RESULT\t" + parts[1] + "\t" + result);
+        }
+        heartbeat.interrupt();
+        logger.info("Export worker " + workerId + " finished. Rasters: " + rasters.stats());
+    }
+
+    private synchronized void send(String message) throws IOException {
+        out.write(message);
+        out.write('\n');
+        out.flush();
+    }
+
+    private static String sanitize(String message) {
+        return message.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,291 @@
+package com.mywatermark;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Headless read → watermark → write path for a single file.
+ * <p>
+ * Used by the in-process export task as well as by export workers running in other JVMs,
+ * so nothing in here may touch JavaFX controls or show dialogs; failures surface as
+ * {@link IOException}s for the caller to report.
+ */
+final class ImageExporter {
+
+    private ImageExporter() {
+    }
+
+    static String getOutputFileName(String originalName, ExportOptions options) {
+        int dot = originalName.lastIndexOf('.');
+        String nameWithoutExt = dot > 0 ? originalName.substring(0, dot) : originalName;
+        String ext = options.format.toLowerCase();
+        String prefixSuffix = options.prefixSuffix != null ? options.prefixSuffix : "";
+
+        return switch (options.namingConvention != null ? options.namingConvention : "Original") {
+            case "Prefix" -> prefixSuffix + nameWithoutExt + "." + ext;
+            case "Suffix" -> nameWithoutExt + prefixSuffix + "." + ext;
+            default -> nameWithoutExt + "." + ext; // Original
+        };
+    }
+
+    /**
+     * Watermarks one file into {@code outputDir}.
+     *
+     * @return the number of bytes written
+     * @throws IOException if the source cannot be decoded or the output cannot be written
+     */
+    static long exportFile(File input, File outputDir, WatermarkRenderer renderer, ExportOptions options,
+                           RasterPool pool) throws IOException {
+        File outputFile = new File(outputDir, getOutputFileName(input.getName(), options));
+        watermark(input, renderer, pool, (image, orientation) -> write(image, outputFile, options, pool, orientation));
+        return outputFile.length();
+    }
+
+    /**
+     * Watermarks one file and returns the encoded output, for sinks such as
+     * {@link ExportArchive} that need the complete entry before writing it.
+     */
+    static byte[] encode(File input, WatermarkRenderer renderer, ExportOptions options, RasterPool pool) throws IOException {
+        ByteArrayImageOutputStream out = new ByteArrayImageOutputStream();
+        watermark(input, renderer, pool, (image, orientation) -> write(image, out, options, pool, orientation));
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        void write(BufferedImage watermarkedImage, int orientation) throws IOException;
+    }
+
+    private static void watermark(File input, WatermarkRenderer renderer, RasterPool pool, Encoder encoder) throws IOException {
+        BufferedImage originalImage = read(input, pool);
+        if (originalImage == null) {
+            throw new IOException("Could not read image: " + input.getName());
+        }
+        BufferedImage watermarkedImage = originalImage;
+        try {
+            // Pixels stay in their stored orientation; the renderer draws through the EXIF
+            // orientation and the encoder writes the tag back
+            WatermarkRenderer fileRenderer = renderer.forFile(input);
+            watermarkedImage = fileRenderer.render(originalImage, pool);
+            encoder.write(watermarkedImage, fileRenderer.getOrientation());
+        } finally {
+            pool.release(originalImage);
+            if (watermarkedImage != originalImage) {
+                pool.release(watermarkedImage);
+            }
+        }
+    }
+
+    /**
+     * Decodes the first image of a file into a raster from {@code pool} when the decoder's
+     * default pixel layout is a standard {@link BufferedImage} type, and into a fresh image
+     * otherwise (e.g. JPEGs with embedded color profiles). Pooled rasters are cleared first
+     * unless the file is a JPEG: BMP, GIF and some PNG decoders skip pixels they consider
+     * transparent or unchanged, which would otherwise show the previous image through.
+     *
+     * @return the decoded image, or {@code null} if no reader understands the file
+     */
+    static BufferedImage read(File input, RasterPool pool) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(input)) {
+            if (in == null) {
+                throw new IOException("Could not open image: " + input.getName());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, false, true);
+                ImageTypeSpecifier defaultType = reader.getImageTypes(0).next();
+                int type = defaultType.getBufferedImageType();
+                if (type == BufferedImage.TYPE_CUSTOM) {
+                    return reader.read(0);
+                }
+                // The JPEG decoder writes every pixel, so only it may reuse a raster as it is
+                boolean writesAll = reader.getFormatName().equalsIgnoreCase("jpeg");
+                BufferedImage destination = writesAll
+                        ? pool.acquire(reader.getWidth(0), reader.getHeight(0), type)
+                        : pool.acquireCleared(reader.getWidth(0), reader.getHeight(0), type);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(destination);
+                try {
+                    return reader.read(0, param);
+                } catch (IIOException | IllegalArgumentException e) {
+                    // The decoder rejected the pooled layout after all; fall back to its own allocation
+                    pool.release(destination);
+                    return reader.read(0);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static void write(BufferedImage image, File file, ExportOptions options, RasterPool pool) throws IOException {
+        write(image, file, options, pool, ImageOrientation.NORMAL);
+    }
+
+    /**
+     * @param orientation EXIF orientation to record in the output, for pixels that are stored
+     *                    turned; see {@link ImageOrientation}
+     */
+    static void write(BufferedImage image, File file, ExportOptions options, RasterPool pool, int orientation) throws IOException {
+        if (options.format.equals("JPEG") || orientation != ImageOrientation.NORMAL) {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+                if (out == null) {
+                    throw new IOException("Could not create output stream for file: " + file.getName());
+                }
+                write(image, out, options, pool, orientation);
+            }
+        } else if (!ImageIO.write(image, "png", file)) {
+            // For PNG, ensure alpha channel is preserved
+            throw new IOException("No PNG writer found on this system.");
+        }
+    }
+
+    /**
+     * Encodes straight into an already open stream, e.g. a network response, without an
+     * intermediate file or byte array.
+     *
+     * @param pool source of temporary rasters, or {@code null} to allocate them
+     */
+    static void write(BufferedImage image, ImageOutputStream out, ExportOptions options, RasterPool pool) throws IOException {
+        write(image, out, options, pool, ImageOrientation.NORMAL);
+    }
+
+    static void write(BufferedImage image, ImageOutputStream out, ExportOptions options, RasterPool pool,
+                      int orientation) throws IOException {
+        if (options.format.equals("JPEG")) {
+            writeJPEG(image, out, options.quality, pool, orientation);
+        } else if (orientation != ImageOrientation.NORMAL) {
+            writePNG(image, out, orientation);
+        } else if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("No PNG writer found on this system.");
+        }
+    }
+
+    /** Writes a PNG with an {@code eXIf} chunk holding the orientation. */
+    private static void writePNG(BufferedImage image, ImageOutputStream out, int orientation) throws IOException {
+        Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName("png");
+        if (!iter.hasNext()) {
+            throw new IOException("No PNG writer found on this system.");
+        }
+        ImageWriter writer = iter.next();
+        try {
+            IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null);
+            IIOMetadataNode chunk = new IIOMetadataNode("UnknownChunk");
+            chunk.setAttribute("type", "eXIf");
+            chunk.setUserObject(exifOrientation(orientation));
+            IIOMetadataNode chunks = new IIOMetadataNode("UnknownChunks");
+            chunks.appendChild(chunk);
+            IIOMetadataNode root = new IIOMetadataNode("javax_imageio_png_1.0");
+            root.appendChild(chunks);
+            metadata.mergeTree("javax_imageio_png_1.0", root);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), null);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * @param pool source of the temporary RGB raster needed for images with alpha, or {@code null}
+     *             to allocate it
+     */
+    static void writeJPEG(BufferedImage image, ImageOutputStream out, double quality, RasterPool pool) throws IOException {
+        writeJPEG(image, out, quality, pool, ImageOrientation.NORMAL);
+    }
+
+    /**
+     * @param orientation EXIF orientation to record in an APP1 segment, or
+     *                    {@link ImageOrientation#NORMAL} to write no EXIF at all
+     */
+    static void writeJPEG(BufferedImage image, ImageOutputStream out, double quality, RasterPool pool,
+                          int orientation) throws IOException {
+        // Convert image to RGB format if it has alpha channel, since JPEG doesn't support transparency
+        BufferedImage rgbImage;
+        if (image.getColorModel().hasAlpha()) {
+            rgbImage = pool != null
+                    ? pool.acquire(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB)
+                    : new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = rgbImage.createGraphics();
+            // Draw white background first
+            g2d.setColor(java.awt.Color.WHITE);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+            // Then draw the original image
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
+        } else {
+            rgbImage = image;
+        }
+
+        Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!iter.hasNext()) {
+            throw new IOException("No JPEG writer found on this system.");
+        }
+        ImageWriter writer = iter.next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality((float) (quality / 100.0));
+            IIOMetadata metadata = null;
+            if (orientation != ImageOrientation.NORMAL) {
+                metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(rgbImage), param);
+                IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+                IIOMetadataNode app1 = new IIOMetadataNode("unknown");
+                app1.setAttribute("MarkerTag", "225");
+                byte[] tiff = exifOrientation(orientation);
+                byte[] segment = new byte[6 + tiff.length];
+                System.arraycopy("Exif\0\0".getBytes(StandardCharsets.ISO_8859_1), 0, segment, 0, 6);
+                System.arraycopy(tiff, 0, segment, 6, tiff.length);
+                app1.setUserObject(segment);
+                // Right after the JFIF header, ahead of the tables and the frame
+                IIOMetadataNode markers = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+                markers.insertBefore(app1, markers.getFirstChild());
+                try {
+                    metadata.setFromTree("javax_imageio_jpeg_image_1.0", root);
+                } catch (IIOInvalidTreeException e) {
+                    throw new IOException("Could not add the EXIF orientation", e);
+                }
+            }
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(rgbImage, null, metadata), param);
+        } finally {
+            writer.dispose();
+            if (pool != null && rgbImage != image) {
+                pool.release(rgbImage);
+            }
+        }
+    }
+
+    /**
+     * A minimal big-endian TIFF block with the orientation as its only tag. The source's own EXIF
+     * is not copied, since its embedded thumbnail would still show the photo without watermark.
+     */
+    private static byte[] exifOrientation(int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(26);
+        tiff.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8); // header, IFD0 at offset 8
+        tiff.putShort((short) 1);                                                // one entry
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1);            // Orientation, SHORT, 1 value
+        tiff.putShort((short) orientation).putShort((short) 0);                 // value, padded to 4 bytes
+        tiff.putInt(0);                                                          // no further IFD
+        return tiff.array();
+    }
+}
@@ -0,0 +1,98 @@
+package com.mywatermark;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * EXIF orientation: how the stored pixels have to be turned to show the photo upright.
+ * <p>
+ * Cameras write portrait shots as landscape pixels plus an Orientation tag, and
+ * {@link ImageIO} ignores the tag. The user places the watermark on the photo as viewers show
+ * it, so positions, sizes and automatic placement are all in display coordinates. Instead of
+ * turning the full-resolution pixels upright and back, the watermark is drawn through
+ * {@link #displayToStored}, straight into the stored pixels, and the tag is written back on
+ * export. The values are those of the tag: 1 is upright, 2 to 4 are mirrored or upside down,
+ * and 5 to 8 swap width and height.
+ */
+final class ImageOrientation {
+
+    static final int NORMAL = 1;
+
+    private ImageOrientation() {
+    }
+
+    static boolean swapsAxes(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    static int displayWidth(int orientation, int storedWidth, int storedHeight) {
+        return swapsAxes(orientation) ? storedHeight : storedWidth;
+    }
+
+    static int displayHeight(int orientation, int storedWidth, int storedHeight) {
+        return swapsAxes(orientation) ? storedWidth : storedHeight;
+    }
+
+    /**
+     * Maps display coordinates to stored pixel coordinates of a {@code storedWidth} x
+     * {@code storedHeight} image. Every orientation is a quarter turn or a mirror, so integer
+     * positions stay integer and images drawn through it are not resampled.
+     */
+    static AffineTransform displayToStored(int orientation, int storedWidth, int storedHeight) {
+        int w = storedWidth;
+        int h = storedHeight;
+        return switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);   // mirrored
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);  // upside down
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);   // mirrored upside down
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);    // transposed
+            case 6 -> new AffineTransform(0, -1, 1, 0, 0, h);   // shown turned 90° clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, w, h);  // transversed
+            case 8 -> new AffineTransform(0, 1, -1, 0, w, 0);   // shown turned 90° counterclockwise
+            default -> new AffineTransform();
+        };
+    }
+
+    /** The inverse of {@link #displayToStored}, for showing stored pixels upright. */
+    static AffineTransform storedToDisplay(int orientation, int storedWidth, int storedHeight) {
+        try {
+            return displayToStored(orientation, storedWidth, storedHeight).createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new AssertionError(e); // quarter turns and mirrors are always invertible
+        }
+    }
+
+    /**
+     * The size of an image as viewers show it, from the file header alone.
+     *
+     * @return the size, or {@code null} if no reader understands the file
+     */
+    static Dimension displaySize(File file) throws IOException {
+        int width;
+        int height;
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Could not open image: " + file.getName());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+        int orientation = ExifReader.orientation(file);
+        return new Dimension(displayWidth(orientation, width, height), displayHeight(orientation, width, height));
+    }
+}
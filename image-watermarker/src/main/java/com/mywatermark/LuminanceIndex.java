@@ -0,0 +1,186 @@
+package com.mywatermark;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Coarse luminance statistics of an image, for choosing where a watermark stays readable.
+ * <p>
+ * The image is sampled on a grid of at most {@link #GRID} cells along its long side, and
+ * summed-area tables of luminance and squared luminance over that grid give the mean and the
+ * variance of any rectangle in constant time. Sampling an already decoded image touches only
+ * a few ten thousand pixels, so this is cheap enough to run for every image of a batch export.
+ */
+final class LuminanceIndex {
+
+    static final int GRID = 128;
+    private static final int SAMPLES_PER_CELL = 2; // per axis, so four pixels per cell
+
+    /** Margin from the image edges, the same as the position buttons use. */
+    static final int MARGIN = 10;
+
+    /** How strongly busy background is penalized against low contrast when scoring a position. */
+    private static final double DETAIL_WEIGHT = 1.0;
+
+    /**
+     * A candidate position. {@code darkText} says whether black or white reads better there;
+     * it only matters when the caller lets the color be chosen too.
+     */
+    record Placement(int x, int y, boolean darkText, double score) { }
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int columns;
+    private final int rows;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final double[] sum;        // (columns + 1) x (rows + 1) summed-area table of luminance
+    private final double[] sumSquares; // and of squared luminance
+
+    private LuminanceIndex(int imageWidth, int imageHeight, int columns, int rows) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellWidth = (double) imageWidth / columns;
+        this.cellHeight = (double) imageHeight / rows;
+        this.sum = new double[(columns + 1) * (rows + 1)];
+        this.sumSquares = new double[(columns + 1) * (rows + 1)];
+    }
+
+    static LuminanceIndex sample(BufferedImage image) {
+        return sample(image, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Samples {@code image}, which may be a downscaled decode of a larger original, and reports
+     * all coordinates in the original's {@code imageWidth} x {@code imageHeight} pixel space.
+     */
+    static LuminanceIndex sample(BufferedImage image, int imageWidth, int imageHeight) {
+        return sample(image, ImageOrientation.NORMAL, imageWidth, imageHeight);
+    }
+
+    /**
+     * Samples {@code image} as it is shown with the given EXIF orientation, reading the stored
+     * pixels in place. {@code imageWidth} x {@code imageHeight} is the size of the upright
+     * original, as in {@link #sample(BufferedImage, int, int)}.
+     */
+    static LuminanceIndex sample(BufferedImage image, int orientation, int imageWidth, int imageHeight) {
+        int width = ImageOrientation.displayWidth(orientation, image.getWidth(), image.getHeight());
+        int height = ImageOrientation.displayHeight(orientation, image.getWidth(), image.getHeight());
+        AffineTransform toStored = ImageOrientation.displayToStored(orientation, image.getWidth(), image.getHeight());
+        double m00 = toStored.getScaleX(), m01 = toStored.getShearX(), m02 = toStored.getTranslateX();
+        double m10 = toStored.getShearY(), m11 = toStored.getScaleY(), m12 = toStored.getTranslateY();
+
+        int longSide = Math.max(width, height);
+        double cell = Math.max(1, (double) longSide / GRID);
+        int columns = Math.max(1, (int) Math.round(width / cell));
+        int rows = Math.max(1, (int) Math.round(height / cell));
+        LuminanceIndex index = new LuminanceIndex(imageWidth, imageHeight, columns, rows);
+
+        double sampleWidth = (double) width / columns;
+        double sampleHeight = (double) height / rows;
+        int stride = columns + 1;
+        for (int row = 0; row < rows; row++) {
+            double rowSum = 0;
+            double rowSumSquares = 0;
+            for (int column = 0; column < columns; column++) {
+                double cellSum = 0;
+                double cellSumSquares = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = (int) ((row + (sy + 0.5) / SAMPLES_PER_CELL) * sampleHeight);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = (int) ((column + (sx + 0.5) / SAMPLES_PER_CELL) * sampleWidth);
+                        // Centre of display pixel (x, y) in stored pixels
+                        int storedX = (int) (m00 * (x + 0.5) + m01 * (y + 0.5) + m02);
+                        int storedY = (int) (m10 * (x + 0.5) + m11 * (y + 0.5) + m12);
+                        double luminance = luminance(image.getRGB(storedX, storedY));
+                        cellSum += luminance;
+                        cellSumSquares += luminance * luminance;
+                    }
+                }
+                rowSum += cellSum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+                rowSumSquares += cellSumSquares / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+                int i = (row + 1) * stride + column + 1;
+                index.sum[i] = index.sum[i - stride] + rowSum;
+                index.sumSquares[i] = index.sumSquares[i - stride] + rowSumSquares;
+            }
+        }
+        return index;
+    }
+
+    /** Relative luminance in [0, 1] of an sRGB pixel, using the Rec. 709 weights. */
+    static double luminance(int rgb) {
+        return (0.2126 * (rgb >> 16 & 0xFF) + 0.7152 * (rgb >> 8 & 0xFF) + 0.0722 * (rgb & 0xFF)) / 255.0;
+    }
+
+    /** Mean luminance of the visible pixels of an image with transparency, such as a logo. */
+    static double meanLuminance(BufferedImage image) {
+        int step = Math.max(1, Math.max(image.getWidth(), image.getHeight()) / GRID);
+        double weighted = 0;
+        double weights = 0;
+        for (int y = step / 2; y < image.getHeight(); y += step) {
+            for (int x = step / 2; x < image.getWidth(); x += step) {
+                int argb = image.getRGB(x, y);
+                double alpha = (argb >>> 24) / 255.0;
+                weighted += alpha * luminance(argb);
+                weights += alpha;
+            }
+        }
+        return weights > 0 ? weighted / weights : 0.5;
+    }
+
+    /**
+     * Scores the nine positions of the layout grid for an item of the given size and returns
+     * the best one: high contrast between the background and the item, little background detail.
+     *
+     * @param itemLuminance luminance of the watermark in [0, 1], or {@code NaN} to pick black or
+     *                      white text per position, whichever contrasts more
+     */
+    Placement bestPlacement(int itemWidth, int itemHeight, double itemLuminance) {
+        Placement best = null;
+        int[] xs = {MARGIN, (imageWidth - itemWidth) / 2, imageWidth - itemWidth - MARGIN};
+        int[] ys = {MARGIN, (imageHeight - itemHeight) / 2, imageHeight - itemHeight - MARGIN};
+        for (int y : ys) {
+            for (int x : xs) {
+                Placement candidate = evaluate(x, y, itemWidth, itemHeight, itemLuminance);
+                if (best == null || candidate.score() > best.score()) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Scores a single position; see {@link #bestPlacement}. */
+    Placement evaluate(int x, int y, int itemWidth, int itemHeight, double itemLuminance) {
+        double[] stats = stats(Math.max(0, x), Math.max(0, y),
+                Math.min(imageWidth, x + itemWidth), Math.min(imageHeight, y + itemHeight));
+        double mean = stats[0];
+        double detail = Math.sqrt(stats[1]);
+        boolean darkText = Double.isNaN(itemLuminance) ? mean > 0.5 : itemLuminance < mean;
+        double contrast = Double.isNaN(itemLuminance) ? Math.max(mean, 1 - mean) : Math.abs(mean - itemLuminance);
+        return new Placement(x, y, darkText, contrast - DETAIL_WEIGHT * detail);
+    }
+
+    /** Mean and variance of luminance over an image-space rectangle, to cell precision. */
+    private double[] stats(int left, int top, int right, int bottom) {
+        int c0 = clamp((int) (left / cellWidth), columns - 1);
+        int r0 = clamp((int) (top / cellHeight), rows - 1);
+        int c1 = Math.max(c0 + 1, clamp((int) Math.ceil(right / cellWidth), columns));
+        int r1 = Math.max(r0 + 1, clamp((int) Math.ceil(bottom / cellHeight), rows));
+        double cells = (double) (c1 - c0) * (r1 - r0);
+        double mean = area(sum, c0, r0, c1, r1) / cells;
+        double variance = Math.max(0, area(sumSquares, c0, r0, c1, r1) / cells - mean * mean);
+        return new double[]{mean, variance};
+    }
+
+    private double area(double[] table, int c0, int r0, int c1, int r1) {
+        int stride = columns + 1;
+        return table[r1 * stride + c1] - table[r0 * stride + c1] - table[r1 * stride + c0] + table[r0 * stride + c0];
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
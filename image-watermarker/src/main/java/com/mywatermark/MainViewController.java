@@ -2,31 +2,28 @@ package com.mywatermark;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.fxml.FXML;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.AlphaComposite;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileReader;
@@ -35,9 +32,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -46,7 +46,7 @@ public class MainViewController {
 
     private static final Logger logger = Logger.getLogger(MainViewController.class.getName());
 
-    private enum WatermarkMode { TEXT, IMAGE }
+    private enum WatermarkMode { TEXT, IMAGE, TILED }
 
     //<editor-fold desc="FXML Fields">
     @FXML private ListView<File> imageListView;
@@ -67,8 +67,10 @@ public class MainViewController {
     @FXML private Button exportButton;
     @FXML private ToggleButton textModeButton;
     @FXML private ToggleButton imageModeButton;
+    @FXML private ToggleButton tiledModeButton;
     @FXML private TitledPane textWatermarkPane;
     @FXML private TitledPane imageWatermarkPane;
+    @FXML private TitledPane tiledWatermarkPane;
     @FXML private TextField imageWatermarkField;
     @FXML private Slider imageOpacitySlider;
     @FXML private Slider imageScaleSlider;
@@ -79,12 +81,20 @@ public class MainViewController {
     @FXML private Slider fontSizeSlider;
     @FXML private CheckBox boldCheckBox;
     @FXML private CheckBox italicCheckBox;
+    @FXML private Slider tileSpacingSlider;
+    @FXML private Slider tileStaggerSlider;
+    @FXML private Spinner<Integer> workerSpinner;
+    @FXML private ComboBox<String> sinkBox;
+    @FXML private CheckBox autoPlacementCheckBox;
+    @FXML private CheckBox autoColorCheckBox;
+    @FXML private TextField textMappingField;
     //</editor-fold>
 
     private final ObservableList<File> imageFiles = FXCollections.observableArrayList();
     private File currentImageFile;
     private File outputDirectory;
     private File imageWatermarkFile;
+    private File textMappingFile;
 
     private WatermarkMode watermarkMode = WatermarkMode.TEXT;
     private int watermarkX = 0;
@@ -99,6 +109,7 @@ public class MainViewController {
         imageListView.getSelectionModel().selectedItemProperty().addListener((obs, ov, nv) -> {
             if (nv != null) {
                 currentImageFile = nv;
+                resetZoom();
                 updatePreview();
             }
         });
@@ -107,11 +118,16 @@ public class MainViewController {
         ToggleGroup modeGroup = new ToggleGroup();
         textModeButton.setToggleGroup(modeGroup);
         imageModeButton.setToggleGroup(modeGroup);
-        textWatermarkPane.visibleProperty().bind(textModeButton.selectedProperty());
+        tiledModeButton.setToggleGroup(modeGroup);
+        // Tiled mode repeats the text watermark, so it shares the text settings pane
+        textWatermarkPane.visibleProperty().bind(textModeButton.selectedProperty().or(tiledModeButton.selectedProperty()));
         imageWatermarkPane.visibleProperty().bind(imageModeButton.selectedProperty());
+        tiledWatermarkPane.visibleProperty().bind(tiledModeButton.selectedProperty());
         modeGroup.selectedToggleProperty().addListener((obs, oldToggle, newToggle) -> {
             if (newToggle == textModeButton) {
                 watermarkMode = WatermarkMode.TEXT;
+            } else if (newToggle == tiledModeButton) {
+                watermarkMode = WatermarkMode.TILED;
             } else {
                 watermarkMode = WatermarkMode.IMAGE;
             }
@@ -126,6 +142,13 @@ public class MainViewController {
         opacitySlider.valueProperty().addListener(obs -> updatePreview());
         imageOpacitySlider.valueProperty().addListener(obs -> updatePreview());
         imageScaleSlider.valueProperty().addListener(obs -> updatePreview());
+        tileSpacingSlider.valueProperty().addListener(obs -> updatePreview());
+        tileStaggerSlider.valueProperty().addListener(obs -> updatePreview());
+        autoPlacementCheckBox.selectedProperty().addListener(obs -> updatePreview());
+        autoColorCheckBox.selectedProperty().addListener(obs -> updatePreview());
+        // Automatic placement overrides the manual position for every image
+        xField.disableProperty().bind(autoPlacementCheckBox.selectedProperty());
+        yField.disableProperty().bind(autoPlacementCheckBox.selectedProperty());
         rotationSlider.valueProperty().addListener((obs, ov, nv) -> { watermarkRotation = nv.doubleValue(); updatePreview(); });
         xField.textProperty().addListener((obs, ov, nv) -> { try { watermarkX = Integer.parseInt(nv); updatePreview(); } catch (NumberFormatException e) { 
             showErrorAlert("Invalid Input", "Please enter a valid number for the X coordinate.");
@@ -143,21 +166,32 @@ public class MainViewController {
         formatBox.setValue("PNG");
         qualitySlider.visibleProperty().bind(formatBox.valueProperty().isEqualTo("JPEG"));
         qualityLabel.visibleProperty().bind(formatBox.valueProperty().isEqualTo("JPEG"));
+        sinkBox.setItems(FXCollections.observableArrayList(ExportArchive.FOLDER, ExportArchive.ZIP, ExportArchive.TAR));
+        sinkBox.setValue(ExportArchive.FOLDER);
+        // Worker processes write straight into the output folder, so archives are built in-process
+        workerSpinner.disableProperty().bind(sinkBox.valueProperty().isNotEqualTo(ExportArchive.FOLDER));
 
         // Add drag functionality to preview pane
         addDragFunctionality();
+        addZoomFunctionality();
 
-        // Initialize font selection
+        // Initialize font selection; the full font list and the template menu are loaded
+        // by loadDeferredResources() once the window is on screen
         initializeFontSelection();
+    }
 
+    /**
+     * Loads the resources that are slow to enumerate off the FX thread, so they do not delay
+     * the first paint. Called by {@link App} once the main window has been shown.
+     */
+    public void loadDeferredResources() {
+        loadFontsAsync();
         loadTemplatesMenu();
     }
 
     private void initializeFontSelection() {
-        // Get all available fonts and populate the combo box
-        java.awt.GraphicsEnvironment ge = java.awt.GraphicsEnvironment.getLocalGraphicsEnvironment();
-        String[] fontNames = ge.getAvailableFontFamilyNames();
-        fontComboBox.getItems().addAll(fontNames);
+        // Start with the default font only; enumerating every installed family can take seconds
+        fontComboBox.getItems().add("Arial");
         fontComboBox.setValue("Arial");
 
         // Set up font size slider
@@ -182,6 +216,23 @@ public class MainViewController {
         }
     }
 
+    private void loadFontsAsync() {
+        Thread fontLoader = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            java.awt.GraphicsEnvironment ge = java.awt.GraphicsEnvironment.getLocalGraphicsEnvironment();
+            String[] fontNames = ge.getAvailableFontFamilyNames();
+            logger.info("Loaded " + fontNames.length + " font families in " + (System.currentTimeMillis() - start) + " ms.");
+            javafx.application.Platform.runLater(() -> {
+                // Keep whatever the user or a template selected while the list was loading
+                String selected = fontComboBox.getValue();
+                fontComboBox.getItems().setAll(fontNames);
+                fontComboBox.setValue(selected);
+            });
+        }, "font-loader");
+        fontLoader.setDaemon(true);
+        fontLoader.start();
+    }
+
     private void addDragFunctionality() {
         previewPane.setOnMousePressed(event -> {
             if (currentImageFile != null) {
@@ -197,6 +248,21 @@ public class MainViewController {
                 double deltaX = event.getX() - lastMouseX;
                 double deltaY = event.getY() - lastMouseY;
 
+                if (zoomScale > 0) {
+                    // Zoomed in: right or middle drag pans, left drag moves the watermark in image pixels
+                    if (event.isSecondaryButtonDown() || event.isMiddleButtonDown()) {
+                        panBy(-deltaX, -deltaY);
+                        lastMouseX = event.getX();
+                        lastMouseY = event.getY();
+                        return;
+                    }
+                    int imageDeltaX = (int) (deltaX / zoomScale);
+                    int imageDeltaY = (int) (deltaY / zoomScale);
+                    if (imageDeltaX == 0 && imageDeltaY == 0) return; // keep accumulating sub-pixel moves
+                    deltaX = imageDeltaX;
+                    deltaY = imageDeltaY;
+                }
+
                 // Update watermark position based on the delta
                 watermarkX += (int) deltaX;
                 watermarkY += (int) deltaY;
@@ -217,9 +283,11 @@ public class MainViewController {
 
     // Apply boundary checks to keep watermark within image bounds
     private void applyBoundaryChecks() {
+        // Tiles cover the whole image, so there is no position to keep inside it
+        if (watermarkMode == WatermarkMode.TILED) return;
         try {
             if (currentImageFile != null) {
-                BufferedImage image = ImageIO.read(currentImageFile);
+                Dimension image = ImageOrientation.displaySize(currentImageFile);
                 if (image != null) {
                     int itemWidth = 0;
                     int itemHeight = 0;
@@ -242,11 +310,11 @@ public class MainViewController {
                     // Keep watermark within image bounds
                     if (watermarkX < 0) watermarkX = 0;
                     if (watermarkY < 0) watermarkY = 0;
-                    if (watermarkX + itemWidth > image.getWidth()) {
-                        watermarkX = Math.max(0, image.getWidth() - itemWidth);
+                    if (watermarkX + itemWidth > image.width) {
+                        watermarkX = Math.max(0, image.width - itemWidth);
                     }
-                    if (watermarkY + itemHeight > image.getHeight()) {
-                        watermarkY = Math.max(0, image.getHeight() - itemHeight);
+                    if (watermarkY + itemHeight > image.height) {
+                        watermarkY = Math.max(0, image.height - itemHeight);
                     }
                 }
             }
@@ -259,6 +327,22 @@ public class MainViewController {
     private double lastMouseX = 0;
     private double lastMouseY = 0;
 
+    private void addZoomFunctionality() {
+        // Ctrl+wheel zooms around the cursor; once zoomed in, the plain wheel pans
+        previewPane.setOnScroll(event -> {
+            if (currentImageFile == null) return;
+            if (event.isControlDown() && event.getDeltaY() != 0) {
+                zoomAt(event.getX(), event.getY(), event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP);
+                event.consume();
+            } else if (zoomScale > 0) {
+                panBy(-event.getDeltaX(), -event.getDeltaY());
+                event.consume();
+            }
+        });
+        previewPane.widthProperty().addListener((obs, ov, nv) -> { if (zoomScale > 0) updatePreview(); });
+        previewPane.heightProperty().addListener((obs, ov, nv) -> { if (zoomScale > 0) updatePreview(); });
+    }
+
     //<editor-fold desc="File Import">
     @FXML
     private void handleImportImages() {
@@ -282,9 +366,7 @@ public class MainViewController {
         if (selectedDirectory != null) {
             logger.info("Importing from folder: " + selectedDirectory.getAbsolutePath());
             try {
-                File[] files = selectedDirectory.listFiles((dir, name) ->
-                        name.toLowerCase().endsWith(".png") || name.toLowerCase().endsWith(".jpg") ||
-                        name.toLowerCase().endsWith(".jpeg") || name.toLowerCase().endsWith(".bmp"));
+                File[] files = selectedDirectory.listFiles((dir, name) -> isImportable(name));
                 if (files != null) {
                     imageFiles.addAll(Arrays.asList(files));
                     logger.info("Found " + files.length + " image(s) in folder.");
@@ -298,9 +380,33 @@ public class MainViewController {
             }
         }
     }
+
+    /** Whether a folder import picks up a file of this name. */
+    static boolean isImportable(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".bmp");
+    }
     //</editor-fold>
 
     //<editor-fold desc="Watermark & Preview">
+    // Zoomed previews are composited from a tile pyramid; a zoomScale of 0 means "fit to pane"
+    private static final double ZOOM_STEP = 1.25;
+    private static final double MAX_ZOOM = 8;
+    private TilePyramid tilePyramid;
+    private double zoomScale = 0;
+    private double zoomOriginX; // image pixel shown at the top-left corner of the pane
+    private double zoomOriginY;
+    // Bumped whenever the pyramid is dropped, so a zoomed frame rendered from it is not shown
+    private int zoomGeneration;
+    private TilePyramid zoomRenderPyramid; // read by the zoomed render in flight, if any
+    private TilePyramid retiredPyramid;    // dropped during that render; closed once it ends
+
+    // Frames are drawn straight into buffers the ImageView shows; the decoded image is kept
+    // so that moving the watermark only redraws the area around it
+    private final PreviewSurface previewSurface = new PreviewSurface();
+    private File previewSourceFile;
+    private BufferedImage previewSource;
+
     // Debounce mechanism for preview updates to improve performance
     private volatile boolean isPreviewUpdating = false;
     private volatile long lastPreviewUpdateTime = 0;
@@ -328,51 +434,58 @@ public class MainViewController {
     
     private void performPreviewUpdate() {
         if (isPreviewUpdating) return;
+        if (zoomScale > 0 && tilePyramid != null) {
+            performZoomedPreviewUpdate();
+            return;
+        }
         isPreviewUpdating = true;
         lastPreviewUpdateTime = System.currentTimeMillis();
+        // Controls may only be read here on the FX thread
+        WatermarkSettings settings = captureSettings();
+        File file = currentImageFile;
         
         // Use a separate thread for preview updates to prevent UI freezing
         new Thread(() -> {
             try {
-                BufferedImage originalImage = ImageIO.read(currentImageFile);
+                if (!file.equals(previewSourceFile)) {
+                    previewSource = null; // let the previous image go before decoding the next
+                    previewSource = ImageIO.read(file);
+                    previewSourceFile = previewSource != null ? file : null;
+                }
+                BufferedImage originalImage = previewSource;
                 if (originalImage == null) {
-                    showErrorAlert("Image Load Error", "Could not read the image file: " + currentImageFile.getName() + ". The file may be corrupt or in an unsupported format.");
-                    logger.warning("ImageIO.read returned null for: " + currentImageFile.getAbsolutePath());
+                    showErrorAlert("Image Load Error", "Could not read the image file: " + file.getName() + ". The file may be corrupt or in an unsupported format.");
+                    logger.warning("ImageIO.read returned null for: " + file.getAbsolutePath());
                     javafx.application.Platform.runLater(() -> isPreviewUpdating = false);
                     return;
                 }
-                BufferedImage watermarkedImage = addWatermark(originalImage);
+                PreviewSurface.Frame frame = drawWatermarked(originalImage, file, settings);
                 
                 // Run UI update on JavaFX Application Thread
                 javafx.application.Platform.runLater(() -> {
                     // Ensure we're not passing a null image to the ImageView
-                    if (watermarkedImage != null) {
-                        Image fxImage = SwingFXUtils.toFXImage(watermarkedImage, null);
-                        if (fxImage != null) {
-                            imagePreviewView.setImage(fxImage);
-                            
-                            // Properly scale the image to fit the preview pane while maintaining aspect ratio
-                            // Use Platform.runLater to ensure UI has been updated and dimensions are available
-                            javafx.application.Platform.runLater(() -> {
-                                if (previewPane != null) {
-                                    // Set fit properties to scale image within the preview pane
-                                    imagePreviewView.setPreserveRatio(true);
-                                    // Use the ScrollPane's viewport dimensions for proper scaling
+                    if (frame != null) {
+                        previewSurface.present(frame, imagePreviewView);
+                        
+                        // Properly scale the image to fit the preview pane while maintaining aspect ratio
+                        // Use Platform.runLater to ensure UI has been updated and dimensions are available
+                        javafx.application.Platform.runLater(() -> {
+                            if (previewPane != null) {
+                                // Set fit properties to scale image within the preview pane
+                                imagePreviewView.setPreserveRatio(true);
+                                // Use the ScrollPane's viewport dimensions for proper scaling
+                                imagePreviewView.setFitWidth(previewPane.getWidth());
+                                imagePreviewView.setFitHeight(previewPane.getHeight());
+                                
+                                // Add a listener to handle dynamic resizing of the preview pane
+                                previewPane.widthProperty().addListener((obs, oldVal, newVal) -> {
                                     imagePreviewView.setFitWidth(previewPane.getWidth());
+                                });
+                                previewPane.heightProperty().addListener((obs, oldVal, newVal) -> {
                                     imagePreviewView.setFitHeight(previewPane.getHeight());
-                                    
-                                    // Add a listener to handle dynamic resizing of the preview pane
-                                    previewPane.widthProperty().addListener((obs, oldVal, newVal) -> {
-                                        imagePreviewView.setFitWidth(previewPane.getWidth());
-                                    });
-                                    previewPane.heightProperty().addListener((obs, oldVal, newVal) -> {
-                                        imagePreviewView.setFitHeight(previewPane.getHeight());
-                                    });
-                                }
-                            });
-                        } else {
-                            logger.warning("SwingFXUtils.toFXImage returned null for: " + currentImageFile.getName());
-                        }
+                                });
+                            }
+                        });
                     } else {
                         logger.warning("Watermarked image is null for: " + currentImageFile.getName());
                     }
@@ -400,80 +513,206 @@ public class MainViewController {
         }).start();
     }
 
-    private void showErrorAlert(String title, String content) {
-        Alert alert = new Alert(Alert.AlertType.ERROR);
-        alert.setTitle(title);
-        alert.setHeaderText(null);
-        alert.setContentText(content);
-        alert.showAndWait();
+    /**
+     * Renders only the visible part of the image at the current zoom: the tile pyramid decodes
+     * the tiles under the viewport, and the watermark is drawn over them with the same renderer
+     * as the export, scaled to screen pixels.
+     */
+    private void performZoomedPreviewUpdate() {
+        isPreviewUpdating = true;
+        lastPreviewUpdateTime = System.currentTimeMillis();
+        TilePyramid pyramid = tilePyramid;
+        double scale = zoomScale;
+        double originX = zoomOriginX;
+        double originY = zoomOriginY;
+        // Near the right and bottom edges the image ends before the pane does
+        int viewWidth = (int) Math.min(previewPane.getWidth(), Math.ceil((pyramid.getWidth() - originX) * scale));
+        int viewHeight = (int) Math.min(previewPane.getHeight(), Math.ceil((pyramid.getHeight() - originY) * scale));
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            isPreviewUpdating = false;
+            return;
+        }
+        WatermarkSettings settings = captureSettings(); // controls may only be read on the FX thread
+        int generation = zoomGeneration;
+        zoomRenderPyramid = pyramid;
+
+        new Thread(() -> {
+            try {
+                WatermarkRenderer renderer = new WatermarkRenderer(settings).forFile(pyramid.getFile());
+                LuminanceIndex.Placement placement = renderer.isAutomatic()
+                        ? renderer.placementFor(LuminanceIndex.sample(pyramid.getOverview(), pyramid.getOrientation(),
+                                pyramid.getWidth(), pyramid.getHeight()))
+                        : null;
+                // Every pan or zoom step moves all pixels, so zoomed frames are always drawn in full
+                PreviewSurface.Frame frame = previewSurface.drawAll(viewWidth, viewHeight, g2d -> {
+                    pyramid.paint(g2d, scale, originX, originY, viewWidth, viewHeight);
+                    g2d.translate(-originX * scale, -originY * scale);
+                    g2d.scale(scale, scale);
+                    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    renderer.draw(g2d, pyramid.getWidth(), pyramid.getHeight(), placement);
+                });
+
+                javafx.application.Platform.runLater(() -> {
+                    zoomedRenderFinished(pyramid);
+                    if (generation == zoomGeneration) {
+                        previewSurface.present(frame, imagePreviewView);
+                        imagePreviewView.setFitWidth(viewWidth);
+                        imagePreviewView.setFitHeight(viewHeight);
+                    }
+                    // Wheel and pan events that arrived while this frame was rendering were dropped,
+                    // and a reset zoom shows the fitted preview of whatever image is current now
+                    if (generation != zoomGeneration || zoomScale != scale || zoomOriginX != originX || zoomOriginY != originY) {
+                        updatePreview();
+                    }
+                });
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Could not decode preview tiles for: " + pyramid.getFile().getAbsolutePath(), e);
+                javafx.application.Platform.runLater(() -> {
+                    zoomedRenderFinished(pyramid);
+                    if (generation == zoomGeneration) {
+                        showErrorAlert("Image Load Error", "An I/O error occurred while reading the file: " + pyramid.getFile().getName());
+                    }
+                });
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Unexpected error in zoomed preview for: " + pyramid.getFile().getAbsolutePath(), e);
+                javafx.application.Platform.runLater(() -> zoomedRenderFinished(pyramid));
+            }
+        }, "zoomed-preview").start();
     }
 
-    private BufferedImage addWatermark(BufferedImage originalImage) {
-        // Create a compatible image type for the original image format
-        BufferedImage watermarkedImage = new BufferedImage(originalImage.getWidth(), originalImage.getHeight(), 
-            originalImage.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : originalImage.getType());
-        
-        // If the image type doesn't support alpha (like JPEG), use RGB
-        if (watermarkedImage.getType() == BufferedImage.TYPE_INT_RGB || 
-            watermarkedImage.getType() == BufferedImage.TYPE_3BYTE_BGR ||
-            watermarkedImage.getType() == BufferedImage.TYPE_4BYTE_ABGR ||
-            watermarkedImage.getType() == BufferedImage.TYPE_BYTE_GRAY) {
-            Graphics2D g2d = watermarkedImage.createGraphics();
-            g2d.drawImage(originalImage, 0, 0, null);
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    /** Called on the FX thread when the zoomed render reading {@code pyramid} has ended, however it ended. */
+    private void zoomedRenderFinished(TilePyramid pyramid) {
+        zoomRenderPyramid = null;
+        isPreviewUpdating = false;
+        if (retiredPyramid == pyramid) {
+            retiredPyramid = null;
+            closePyramid(pyramid);
+        }
+    }
 
-            if (watermarkMode == WatermarkMode.TEXT) {
-                addTextWatermark(g2d);
-            } else if (watermarkMode == WatermarkMode.IMAGE && imageWatermarkFile != null) {
-                addImageWatermark(g2d);
+    /**
+     * Multiplies the zoom by {@code factor}, keeping the image point under the pane position
+     * ({@code paneX}, {@code paneY}) in place. Zooming out past the fitted size returns to it.
+     */
+    private void zoomAt(double paneX, double paneY, double factor) {
+        if (tilePyramid == null || !tilePyramid.getFile().equals(currentImageFile)) {
+            resetZoom();
+            try {
+                tilePyramid = new TilePyramid(currentImageFile);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Cannot zoom into " + currentImageFile.getAbsolutePath(), e);
+                return;
             }
+        }
+        double fitScale = Math.min(previewPane.getWidth() / tilePyramid.getWidth(),
+                previewPane.getHeight() / tilePyramid.getHeight());
+        double current = zoomScale > 0 ? zoomScale : fitScale;
+        double next = Math.min(MAX_ZOOM, current * factor);
+        if (next <= fitScale) {
+            zoomScale = 0;
+            updatePreview();
+            return;
+        }
+        double imageX = (zoomScale > 0 ? zoomOriginX : 0) + paneX / current;
+        double imageY = (zoomScale > 0 ? zoomOriginY : 0) + paneY / current;
+        zoomScale = next;
+        zoomOriginX = imageX - paneX / next;
+        zoomOriginY = imageY - paneY / next;
+        clampZoomOrigin();
+        logger.fine(String.format("Preview zoom %.0f%% (%s)", zoomScale * 100, tilePyramid.stats()));
+        updatePreview();
+    }
 
-            g2d.dispose();
-            return watermarkedImage;
-        } else {
-            // For types that support alpha, use TYPE_INT_ARGB
-            watermarkedImage = new BufferedImage(originalImage.getWidth(), originalImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = watermarkedImage.createGraphics();
-            g2d.drawImage(originalImage, 0, 0, null);
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    private void panBy(double paneDeltaX, double paneDeltaY) {
+        zoomOriginX += paneDeltaX / zoomScale;
+        zoomOriginY += paneDeltaY / zoomScale;
+        clampZoomOrigin();
+        updatePreview();
+    }
 
-            if (watermarkMode == WatermarkMode.TEXT) {
-                addTextWatermark(g2d);
-            } else if (watermarkMode == WatermarkMode.IMAGE && imageWatermarkFile != null) {
-                addImageWatermark(g2d);
+    private void clampZoomOrigin() {
+        double maxX = Math.max(0, tilePyramid.getWidth() - previewPane.getWidth() / zoomScale);
+        double maxY = Math.max(0, tilePyramid.getHeight() - previewPane.getHeight() / zoomScale);
+        zoomOriginX = Math.max(0, Math.min(maxX, zoomOriginX));
+        zoomOriginY = Math.max(0, Math.min(maxY, zoomOriginY));
+    }
+
+    private void resetZoom() {
+        zoomScale = 0;
+        zoomGeneration++;
+        if (tilePyramid != null) {
+            TilePyramid previous = tilePyramid;
+            tilePyramid = null;
+            if (previous == zoomRenderPyramid) {
+                retiredPyramid = previous; // still being read; closed when that render ends
+            } else {
+                closePyramid(previous);
             }
+        }
+    }
 
-            g2d.dispose();
-            return watermarkedImage;
+    private static void closePyramid(TilePyramid pyramid) {
+        try {
+            pyramid.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not close tile pyramid", e);
         }
     }
 
-    private void addTextWatermark(Graphics2D g2d) {
-        String text = watermarkTextField.getText();
-        if (text == null || text.isEmpty()) return;
+    private void showErrorAlert(String title, String content) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(content);
+        alert.showAndWait();
+    }
 
-        Color fxColor = colorPicker.getValue();
-        // JavaFX Color values are between 0-1, so we need to multiply by 255 for AWT
-        java.awt.Color awtColor = new java.awt.Color(
-            (float) fxColor.getRed(), 
-            (float) fxColor.getGreen(), 
-            (float) fxColor.getBlue(), 
-            (float) opacitySlider.getValue()
-        );
-        g2d.setColor(awtColor);
-        
+    /**
+     * Draws the watermarked image into the preview surface, the way {@link WatermarkRenderer#render}
+     * would, but redrawing only what changed since the buffer was last shown.
+     */
+    private PreviewSurface.Frame drawWatermarked(BufferedImage originalImage, File file, WatermarkSettings settings)
+            throws IOException {
+        WatermarkRenderer renderer = new WatermarkRenderer(settings).forFile(file);
+        int orientation = renderer.getOrientation();
+        int width = ImageOrientation.displayWidth(orientation, originalImage.getWidth(), originalImage.getHeight());
+        int height = ImageOrientation.displayHeight(orientation, originalImage.getWidth(), originalImage.getHeight());
+        LuminanceIndex.Placement placement = renderer.placementFor(originalImage);
+        return previewSurface.draw(originalImage, orientation, renderer.bounds(width, height, placement), g2d -> {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            renderer.draw(g2d, width, height, placement);
+        });
+    }
+
+    private WatermarkSettings captureSettings() {
+        WatermarkSettings settings = new WatermarkSettings();
+        settings.text = watermarkTextField.getText();
+        settings.textMappingPath = textMappingFile != null ? textMappingFile.getAbsolutePath() : null;
+        settings.color = colorPicker.getValue().toString();
+        settings.opacity = opacitySlider.getValue();
+        settings.imageWatermarkPath = (imageWatermarkFile != null) ? imageWatermarkFile.getAbsolutePath() : null;
+        settings.imageOpacity = imageOpacitySlider.getValue();
+        settings.imageScale = imageScaleSlider.getValue();
+        settings.x = watermarkX;
+        settings.y = watermarkY;
+        settings.rotation = watermarkRotation;
+        settings.mode = watermarkMode.name();
+        settings.tileSpacing = tileSpacingSlider.getValue();
+        settings.tileStagger = tileStaggerSlider.getValue();
+        settings.fontFamily = fontComboBox.getValue() != null ? fontComboBox.getValue() : "Arial";
+        settings.fontSize = (int) fontSizeSlider.getValue();
+        settings.bold = boldCheckBox.isSelected();
+        settings.italic = italicCheckBox.isSelected();
+        settings.autoPlacement = autoPlacementCheckBox.isSelected();
+        settings.autoColor = autoColorCheckBox.isSelected();
+        return settings;
+    }
+
+    private Font getWatermarkFont() {
         // Use a dynamic font based on user selection if available, otherwise default
-        String fontFamily = "Arial";
-        int fontSize = 48;
+        String fontFamily = fontComboBox != null && fontComboBox.getValue() != null ? fontComboBox.getValue() : "Arial";
+        int fontSize = fontSizeSlider != null ? (int) fontSizeSlider.getValue() : 48;
         int fontStyle = Font.PLAIN; // Default to plain instead of bold
-        
-        // Check if font is selected and available
-        if (fontComboBox != null && fontComboBox.getValue() != null) {
-            fontFamily = fontComboBox.getValue();
-        }
-        if (fontSizeSlider != null) {
-            fontSize = (int) fontSizeSlider.getValue();
-        }
         // Combine bold and italic styles appropriately
         if (boldCheckBox != null && boldCheckBox.isSelected()) {
             fontStyle |= Font.BOLD;
@@ -481,41 +720,7 @@ public class MainViewController {
         if (italicCheckBox != null && italicCheckBox.isSelected()) {
             fontStyle |= Font.ITALIC;
         }
-        
-        g2d.setFont(new Font(fontFamily, fontStyle, fontSize));
-
-        FontMetrics fm = g2d.getFontMetrics();
-        int textWidth = fm.stringWidth(text);
-
-        AffineTransform originalTransform = g2d.getTransform();
-        g2d.rotate(Math.toRadians(watermarkRotation), watermarkX + textWidth / 2.0, watermarkY);
-        g2d.drawString(text, watermarkX, watermarkY + fm.getAscent());
-        g2d.setTransform(originalTransform);
-    }
-
-    private void addImageWatermark(Graphics2D g2d) {
-        try {
-            BufferedImage watermark = ImageIO.read(imageWatermarkFile);
-            if (watermark == null) {
-                showErrorAlert("Watermark Load Error", "Could not read the watermark image file: " + imageWatermarkFile.getName() + ". It may be corrupt or unsupported.");
-                logger.warning("ImageIO.read returned null for watermark file: " + imageWatermarkFile.getAbsolutePath());
-                return;
-            }
-            double scale = imageScaleSlider.getValue();
-            int width = (int) (watermark.getWidth() * scale);
-            int height = (int) (watermark.getHeight() * scale);
-
-            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) imageOpacitySlider.getValue()));
-
-            AffineTransform originalTransform = g2d.getTransform();
-            g2d.rotate(Math.toRadians(watermarkRotation), watermarkX + width / 2.0, watermarkY + height / 2.0);
-            g2d.drawImage(watermark, watermarkX, watermarkY, width, height, null);
-            g2d.setTransform(originalTransform);
-
-        } catch (IOException e) {
-            showErrorAlert("Watermark Load Error", "An I/O error occurred while loading the watermark image.");
-            logger.log(Level.SEVERE, "IOException in addImageWatermark for: " + imageWatermarkFile.getAbsolutePath(), e);
-        }
+        return new Font(fontFamily, fontStyle, fontSize);
     }
 
     @FXML
@@ -530,6 +735,26 @@ public class MainViewController {
             updatePreview();
         }
     }
+
+    @FXML
+    private void handleSelectTextMapping() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Per-Image Text Data");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV or JSON", "*.csv", "*.json"));
+        File selectedFile = fileChooser.showOpenDialog(null);
+        if (selectedFile != null) {
+            textMappingFile = selectedFile;
+            textMappingField.setText(selectedFile.getName());
+            updatePreview();
+        }
+    }
+
+    @FXML
+    private void handleClearTextMapping() {
+        textMappingFile = null;
+        textMappingField.setText("");
+        updatePreview();
+    }
     //</editor-fold>
 
     //<editor-fold desc="Layout & Positioning">
@@ -549,9 +774,10 @@ public class MainViewController {
     @FXML private void handlePositionBottomRight() { setPosition(2, 2); }
 
     private void setPosition(int hPos, int vPos) { // 0=left/top, 1=center, 2=right/bottom
-        if (currentImageFile == null) return;
+        if (currentImageFile == null || watermarkMode == WatermarkMode.TILED) return;
         try {
-            BufferedImage image = ImageIO.read(currentImageFile);
+            // Positions are on the photo as shown, so portrait shots stored sideways use the turned size
+            Dimension image = ImageOrientation.displaySize(currentImageFile);
             if (image == null) {
                 showErrorAlert("Image Load Error", "Could not read the image file to calculate position.");
                 logger.warning("setPosition could not read image file: " + currentImageFile.getAbsolutePath());
@@ -576,12 +802,12 @@ public class MainViewController {
             }
 
             if (hPos == 0) watermarkX = 10;
-            else if (hPos == 1) watermarkX = (image.getWidth() - itemWidth) / 2;
-            else watermarkX = image.getWidth() - itemWidth - 10;
+            else if (hPos == 1) watermarkX = (image.width - itemWidth) / 2;
+            else watermarkX = image.width - itemWidth - 10;
 
             if (vPos == 0) watermarkY = 0;
-            else if (vPos == 1) watermarkY = (image.getHeight() - itemHeight) / 2;
-            else watermarkY = image.getHeight() - itemHeight - 10;
+            else if (vPos == 1) watermarkY = (image.height - itemHeight) / 2;
+            else watermarkY = image.height - itemHeight - 10;
 
             updatePositionFields();
             updatePreview();
@@ -594,16 +820,7 @@ public class MainViewController {
     private FontMetrics getFontMetrics() {
         BufferedImage tempImg = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = tempImg.createGraphics();
-        String fontFamily = fontComboBox != null && fontComboBox.getValue() != null ? fontComboBox.getValue() : "Arial";
-        int fontSize = fontSizeSlider != null ? (int) fontSizeSlider.getValue() : 48;
-        int fontStyle = Font.PLAIN;
-        if (boldCheckBox != null && boldCheckBox.isSelected()) {
-            fontStyle |= Font.BOLD;
-        }
-        if (italicCheckBox != null && italicCheckBox.isSelected()) {
-            fontStyle |= Font.ITALIC;
-        }
-        g2d.setFont(new Font(fontFamily, fontStyle, fontSize));
+        g2d.setFont(getWatermarkFont());
         FontMetrics fm = g2d.getFontMetrics();
         g2d.dispose();
         return fm;
@@ -622,6 +839,8 @@ public class MainViewController {
         }
     }
 
+    private static final long PROGRESS_SAMPLE_INTERVAL_MS = 250; // export progress refresh rate
+
     @FXML
     private void handleExport() {
         if (imageFiles.isEmpty() || outputDirectory == null) {
@@ -636,18 +855,32 @@ public class MainViewController {
             }
         }
 
-        ExportTask exportTask = new ExportTask(imageFiles, outputDirectory);
+        ExportTask exportTask = new ExportTask(List.copyOf(imageFiles), outputDirectory, captureSettings(),
+                captureExportOptions(), workerSpinner.getValue());
 
         exportProgressBar.visibleProperty().bind(exportTask.runningProperty());
         exportProgressLabel.visibleProperty().bind(exportTask.runningProperty());
-        exportProgressBar.progressProperty().bind(exportTask.progressProperty());
-        exportProgressLabel.textProperty().bind(exportTask.messageProperty());
         exportButton.disableProperty().bind(exportTask.runningProperty());
 
+        // Sample the lock-free counters at a fixed rate instead of posting an update per file
+        ExportProgress progress = exportTask.getExportProgress();
+        exportProgressBar.setProgress(0);
+        exportProgressLabel.setText("Starting export...");
+        Timeline progressSampler = new Timeline(new KeyFrame(Duration.millis(PROGRESS_SAMPLE_INTERVAL_MS), e -> {
+            ExportProgress.Snapshot snapshot = progress.snapshot();
+            exportProgressBar.setProgress(snapshot.fraction());
+            exportProgressLabel.setText(snapshot.format());
+        }));
+        progressSampler.setCycleCount(Animation.INDEFINITE);
+        progressSampler.play();
+
         // Change cursor to wait
         Scene scene = exportButton.getScene();
         exportTask.runningProperty().addListener((obs, wasRunning, isRunning) -> {
             scene.setCursor(isRunning ? Cursor.WAIT : Cursor.DEFAULT);
+            if (!isRunning) {
+                progressSampler.stop();
+            }
         });
 
         exportTask.setOnSucceeded(e -> {
@@ -655,136 +888,163 @@ public class MainViewController {
         });
 
         exportTask.setOnFailed(e -> {
+            logger.log(Level.SEVERE, "Export task failed", exportTask.getException());
             showErrorAlert("Export Failed", "An unexpected error occurred during the export process.");
         });
 
         new Thread(exportTask).start();
     }
 
-    private String getOutputFileName(String originalName, String format) {
-        String nameWithoutExt = originalName.substring(0, originalName.lastIndexOf('.'));
-        String ext = format.toLowerCase();
-        String namingConvention = namingConventionBox.getValue();
-        String prefixSuffix = prefixSuffixField.getText();
-
-        return switch (namingConvention) {
-            case "Prefix" -> prefixSuffix + nameWithoutExt + "." + ext;
-            case "Suffix" -> nameWithoutExt + prefixSuffix + "." + ext;
-            default -> originalName.substring(0, originalName.lastIndexOf('.')) + "." + ext; // Original
-        };
-    }
-
-    private boolean saveAsJPEG(BufferedImage image, File file) {
-        ImageWriter writer = null;
-        try {
-            // Convert image to RGB format if it has alpha channel, since JPEG doesn't support transparency
-            BufferedImage rgbImage;
-            if (image.getColorModel().hasAlpha()) {
-                rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-                Graphics2D g2d = rgbImage.createGraphics();
-                // Draw white background first
-                g2d.setColor(java.awt.Color.WHITE);
-                g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
-                // Then draw the original image
-                g2d.drawImage(image, 0, 0, null);
-                g2d.dispose();
-            } else {
-                rgbImage = image;
-            }
-
-            Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName("jpeg");
-            if (iter.hasNext()) {
-                writer = iter.next();
-            } else {
-                showErrorAlert("Export Error", "No JPEG writer found on this system.");
-                logger.severe("No JPEG writer found.");
-                return false;
-            }
-
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            param.setCompressionQuality((float) (qualitySlider.getValue() / 100.0));
-
-            try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
-                if (out == null) {
-                    showErrorAlert("Export Error", "Could not create output stream for file: " + file.getName());
-                    logger.severe("ImageIO.createImageOutputStream returned null for: " + file.getAbsolutePath());
-                    return false;
-                }
-                writer.setOutput(out);
-                writer.write(null, new IIOImage(rgbImage, null, null), param);
-            }
-            return true;
-        } catch (IOException e) {
-            showErrorAlert("Export Error", "An error occurred while saving JPEG file " + file.getName() + ": " + e.getMessage());
-            logger.log(Level.SEVERE, "IOException in saveAsJPEG for: " + file.getAbsolutePath(), e);
-            return false;
-        } finally {
-            if (writer != null) {
-                writer.dispose();
-            }
-        }
+    private ExportOptions captureExportOptions() {
+        ExportOptions options = new ExportOptions();
+        options.format = formatBox.getValue();
+        options.quality = qualitySlider.getValue();
+        options.namingConvention = namingConventionBox.getValue();
+        options.prefixSuffix = prefixSuffixField.getText();
+        options.sink = sinkBox.getValue();
+        return options;
     }
     //</editor-fold>
 
     //<editor-fold desc="Export Task">
-    private class ExportTask extends javafx.concurrent.Task<String> {
+    /**
+     * Exports a batch off the FX thread. Progress goes through {@link ExportProgress} rather than
+     * the Task properties, so the benchmark in the test sources can run {@link #call()} without a toolkit.
+     */
+    static class ExportTask extends javafx.concurrent.Task<String> {
         private final List<File> files;
         private final File outputDir;
+        private final WatermarkSettings settings;
+        private final ExportOptions options;
+        private final int workerProcesses;
+        private final ExportProgress progress;
 
-        public ExportTask(List<File> files, File outputDir) {
+        public ExportTask(List<File> files, File outputDir, WatermarkSettings settings, ExportOptions options, int workerProcesses) {
             this.files = files;
             this.outputDir = outputDir;
+            this.settings = settings;
+            this.options = options;
+            this.workerProcesses = workerProcesses;
+            this.progress = new ExportProgress(files.size());
+        }
+
+        ExportProgress getExportProgress() {
+            return progress;
         }
 
         @Override
         protected String call() throws Exception {
             logger.info("Export task started for " + files.size() + " file(s).");
-            int successCount = 0;
-            int failCount = 0;
-            int total = files.size();
-
-            for (int i = 0; i < total; i++) {
-                File file = files.get(i);
-                updateProgress(i, total);
-                updateMessage(String.format("Processing %d of %d: %s", i + 1, total, file.getName()));
-
-                try {
-                    BufferedImage originalImage = ImageIO.read(file);
-                    if (originalImage == null) {
-                        logger.warning("Skipping file (could not read): " + file.getAbsolutePath());
-                        failCount++;
-                        continue;
-                    }
+            ExportArchive archive = ExportArchive.open(options.sink, outputDir);
+            if (workerProcesses > 0 && archive == null) {
+                return callDistributed();
+            }
+            WatermarkRenderer renderer = new WatermarkRenderer(settings);
+            RasterPool rasters = RasterPool.forHeap();
+            // One thread per core, but only as many files at once as the heap holds
+            MemoryBudget memory = MemoryBudget.forHeap();
+            int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try (archive) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < files.size(); i++) {
+                    File file = files.get(i);
+                    int index = i;
+                    futures.add(pool.submit(() -> {
+                        exportFile(index, file, renderer, rasters, memory, archive);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                pool.shutdownNow();
+            }
 
-                    BufferedImage watermarkedImage = addWatermark(originalImage);
-                    String format = formatBox.getValue();
-                    File outputFile = new File(outputDir, getOutputFileName(file.getName(), format));
+            ExportProgress.Snapshot snapshot = progress.snapshot();
+            String resultMessage = String.format("Export complete!\n\nSuccessful: %d\nFailed: %d\nTime: %.1f s (%.1f files/s)",
+                    snapshot.succeeded(), snapshot.failed(), snapshot.elapsedMillis() / 1000.0, snapshot.filesPerSecond());
+            if (archive != null) {
+                resultMessage += "\nArchive: " + archive.getFile().getName() + " (" + archive.getEntryCount() + " entries)";
+            }
+            logger.info("Export task finished. " + resultMessage.replace("\n", " ") + " Rasters: " + rasters.stats());
+            return resultMessage;
+        }
 
-                    boolean success;
-                    if (format.equals("JPEG")) {
-                        success = saveAsJPEG(watermarkedImage, outputFile);
-                    } else {
-                        // For PNG, ensure alpha channel is preserved
-                        success = ImageIO.write(watermarkedImage, "png", outputFile);
-                    }
+        private void exportFile(int index, File file, WatermarkRenderer renderer, RasterPool rasters,
+                                MemoryBudget memory, ExportArchive archive) throws InterruptedException {
+            int reservation = 0;
+            try {
+                if (!isCancelled()) {
+                    // Reserved before the file counts as started, so waiting for memory is not shown as work
+                    reservation = memory.reserve(MemoryBudget.estimate(file));
+                }
+            } finally {
+                if (reservation == 0 && archive != null) archive.skip(index);
+            }
+            if (reservation == 0) return;
 
-                    if (success) {
-                        successCount++;
-                    } else {
-                        logger.severe("Failed to write output file: " + outputFile.getAbsolutePath());
-                        failCount++;
-                    }
-                } catch (IOException e) {
-                    logger.log(Level.SEVERE, "IOException during export for file: " + file.getAbsolutePath(), e);
-                    failCount++;
+            progress.fileStarted(index, file.getName());
+            boolean success = false;
+            long written = 0;
+            try {
+                byte[] entry;
+                try {
+                    entry = export(file, renderer, rasters, archive);
+                } catch (OutOfMemoryError e) {
+                    // The estimate fell short; give the idle rasters back and retry with the heap to itself
+                    memory.release(reservation);
+                    reservation = 0;
+                    rasters.clear();
+                    logger.warning("Out of memory while exporting " + file.getName() + ", retrying it alone.");
+                    reservation = memory.reserveAll();
+                    entry = export(file, renderer, rasters, archive);
                 }
+                // The archive may hold this entry back until an earlier file is done, and that file
+                // may still be waiting for memory, so the reservation must not be kept while waiting
+                memory.release(reservation);
+                reservation = 0;
+                if (entry != null) {
+                    archive.put(index, ImageExporter.getOutputFileName(file.getName(), options), entry);
+                    written = entry.length;
+                } else {
+                    written = new File(outputDir, ImageExporter.getOutputFileName(file.getName(), options)).length();
+                }
+                success = true;
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                logger.log(Level.SEVERE, "Export failed for file: " + file.getAbsolutePath(), e);
+            } finally {
+                memory.release(reservation);
+                if (archive != null && !success) {
+                    archive.skip(index);
+                }
+                progress.fileFinished(index, success, file.length(), written);
+            }
+        }
+
+        /**
+         * Writes {@code file} to the output folder, or encodes it for the archive without handing
+         * it over yet.
+         *
+         * @return the encoded archive entry, or {@code null} once the file has been written
+         */
+        private byte[] export(File file, WatermarkRenderer renderer, RasterPool rasters,
+                              ExportArchive archive) throws IOException {
+            if (archive != null) {
+                return ImageExporter.encode(file, renderer, options, rasters);
             }
+            ImageExporter.exportFile(file, outputDir, renderer, options, rasters);
+            return null;
+        }
 
-            updateProgress(total, total);
-            updateMessage("Finishing up...");
-            String resultMessage = String.format("Export complete!\n\nSuccessful: %d\nFailed: %d", successCount, failCount);
-            logger.info("Export task finished. " + resultMessage.replace("\n", " "));
+        private String callDistributed() throws IOException, InterruptedException {
+            DistributedExportCoordinator coordinator =
+                    new DistributedExportCoordinator(files, outputDir, settings, options, workerProcesses);
+            DistributedExportCoordinator.Report report = coordinator.run(progress);
+            String resultMessage = report.summary();
+            logger.info("Distributed export finished. " + resultMessage.replace("\n", " "));
+            report.failures.forEach(f -> logger.warning("Export failed for " + f));
             return resultMessage;
         }
     }
@@ -802,17 +1062,7 @@ public class MainViewController {
                 return;
             }
 
-            WatermarkSettings settings = new WatermarkSettings();
-            // Populate settings from UI controls
-            settings.text = watermarkTextField.getText();
-            settings.color = colorPicker.getValue().toString();
-            settings.opacity = opacitySlider.getValue();
-            settings.imageWatermarkPath = (imageWatermarkFile != null) ? imageWatermarkFile.getAbsolutePath() : null;
-            settings.imageOpacity = imageOpacitySlider.getValue();
-            settings.imageScale = imageScaleSlider.getValue();
-            settings.x = watermarkX;
-            settings.y = watermarkY;
-            settings.rotation = watermarkRotation;
+            WatermarkSettings settings = captureSettings();
 
             try {
                 if (!Files.exists(templatesDir)) {
@@ -872,6 +1122,8 @@ public class MainViewController {
 
     private void applySettings(WatermarkSettings settings) {
         watermarkTextField.setText(settings.text);
+        textMappingFile = settings.textMappingPath != null ? new File(settings.textMappingPath) : null;
+        textMappingField.setText(textMappingFile != null ? textMappingFile.getName() : "");
         colorPicker.setValue(Color.valueOf(settings.color));
         opacitySlider.setValue(settings.opacity);
         if (settings.imageWatermarkPath != null) {
@@ -884,40 +1136,53 @@ public class MainViewController {
         watermarkY = settings.y;
         watermarkRotation = settings.rotation;
         rotationSlider.setValue(watermarkRotation);
+        tileSpacingSlider.setValue(settings.tileSpacing);
+        tileStaggerSlider.setValue(settings.tileStagger);
+        if (settings.fontFamily != null) {
+            fontComboBox.setValue(settings.fontFamily);
+        }
+        fontSizeSlider.setValue(settings.fontSize);
+        boldCheckBox.setSelected(settings.bold);
+        italicCheckBox.setSelected(settings.italic);
+        autoPlacementCheckBox.setSelected(settings.autoPlacement);
+        autoColorCheckBox.setSelected(settings.autoColor);
+        switch (WatermarkMode.valueOf(WatermarkRenderer.normalizeMode(settings.mode))) {
+            case TEXT -> textModeButton.setSelected(true);
+            case IMAGE -> imageModeButton.setSelected(true);
+            case TILED -> tiledModeButton.setSelected(true);
+        }
         updatePositionFields();
         updatePreview();
         logger.info("Applied settings from template.");
     }
 
     private void loadTemplatesMenu() {
-        myTemplatesMenu.getItems().clear();
-        if (!Files.exists(templatesDir) || !Files.isDirectory(templatesDir)) {
-            // Don't show an error if the directory just doesn't exist yet.
-            return;
-        }
-        try (Stream<Path> files = Files.list(templatesDir)) {
-            files.filter(f -> f.toString().endsWith(".json")).forEach(f -> {
-                String name = f.getFileName().toString().replace(".json", "");
-                MenuItem item = new MenuItem(name);
-                item.setOnAction(e -> loadTemplateFromFile(f.toFile()));
-                myTemplatesMenu.getItems().add(item);
-            });
-        } catch (IOException e) {
-            showErrorAlert("Menu Error", "Could not load templates for the menu: " + e.getMessage());
-            logger.log(Level.WARNING, "Could not load templates for menu.", e);
-        }
-    }
-
-    public static class WatermarkSettings {
-        public String text;
-        public String color;
-        public double opacity;
-        public String imageWatermarkPath;
-        public double imageOpacity;
-        public double imageScale;
-        public int x;
-        public int y;
-        public double rotation;
+        // Directory I/O runs in the background; only the menu items are built on the FX thread
+        Thread menuLoader = new Thread(() -> {
+            if (!Files.exists(templatesDir) || !Files.isDirectory(templatesDir)) {
+                // Don't show an error if the directory just doesn't exist yet.
+                javafx.application.Platform.runLater(() -> myTemplatesMenu.getItems().clear());
+                return;
+            }
+            try (Stream<Path> files = Files.list(templatesDir)) {
+                List<Path> templates = files.filter(f -> f.toString().endsWith(".json")).sorted().toList();
+                javafx.application.Platform.runLater(() -> {
+                    myTemplatesMenu.getItems().clear();
+                    for (Path f : templates) {
+                        String name = f.getFileName().toString().replace(".json", "");
+                        MenuItem item = new MenuItem(name);
+                        item.setOnAction(e -> loadTemplateFromFile(f.toFile()));
+                        myTemplatesMenu.getItems().add(item);
+                    }
+                });
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not load templates for menu.", e);
+                javafx.application.Platform.runLater(() ->
+                        showErrorAlert("Menu Error", "Could not load templates for the menu: " + e.getMessage()));
+            }
+        }, "template-menu-loader");
+        menuLoader.setDaemon(true);
+        menuLoader.start();
     }
     //</editor-fold>
 }
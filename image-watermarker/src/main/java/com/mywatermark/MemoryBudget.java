@@ -0,0 +1,87 @@
+package com.mywatermark;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits how many images an export works on at once by the heap they need rather than by
+ * the number of cores.
+ * <p>
+ * Every file in flight holds its decoded raster, usually a converted copy for the output type
+ * and, for JPEG output with alpha, an RGB copy as well. Eight 24 MP files at once need more
+ * than a gigabyte, so before decoding, a file reserves its estimated working set from the
+ * budget and waits while the other files hold too much of it. A file larger than the whole
+ * budget waits until it can run alone.
+ */
+final class MemoryBudget {
+
+    private static final Logger logger = Logger.getLogger(MemoryBudget.class.getName());
+
+    /** Decoded raster, converted output raster and JPEG RGB copy, each up to 4 bytes per pixel. */
+    static final int BYTES_PER_PIXEL = 12;
+    private static final long UNIT = 1024 * 1024; // permits are megabytes, so large heaps fit in an int
+
+    private final Semaphore permits;
+    private final int totalPermits;
+
+    MemoryBudget(long bytes) {
+        this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / UNIT));
+        this.permits = new Semaphore(totalPermits, true); // fair, so a large file is not starved by small ones
+    }
+
+    /** A budget of half the maximum heap; {@link RasterPool#forHeap()} may keep another quarter idle. */
+    static MemoryBudget forHeap() {
+        return new MemoryBudget(Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Estimated bytes needed to watermark {@code file}, from its header alone. Files whose size
+     * cannot be read are estimated from their length, as if they were uncompressed.
+     */
+    static long estimate(File file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers != null && readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in, true, true);
+                    return (long) reader.getWidth(0) * reader.getHeight(0) * BYTES_PER_PIXEL + file.length();
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.FINE, "Could not read the image size of " + file.getName(), e);
+        }
+        return file.length() * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Blocks until {@code bytes} of the budget are free and takes them, or the whole budget if
+     * it is smaller.
+     *
+     * @return the reservation, to be passed to {@link #release}
+     */
+    int reserve(long bytes) throws InterruptedException {
+        int count = (int) Math.min(totalPermits, Math.max(1, (bytes + UNIT - 1) / UNIT));
+        permits.acquire(count);
+        return count;
+    }
+
+    /** Blocks until no other file holds any of the budget and takes all of it. */
+    int reserveAll() throws InterruptedException {
+        permits.acquire(totalPermits);
+        return totalPermits;
+    }
+
+    void release(int reservation) {
+        permits.release(reservation);
+    }
+}
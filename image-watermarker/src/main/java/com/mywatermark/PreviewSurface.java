@@ -0,0 +1,179 @@
+package com.mywatermark;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * Preview frames handed from Java2D to JavaFX, copying only what changed.
+ * <p>
+ * Frames are drawn on a background thread into a private {@code TYPE_INT_ARGB_PRE}
+ * {@link BufferedImage}. {@link #present} then copies the rectangle that changed since the
+ * last presented frame into a JavaFX {@link PixelBuffer} on the FX thread. The copy runs
+ * inside {@link PixelBuffer#updateBuffer}, the only place where the buffer may be written while
+ * the renderer may be uploading it. When only the watermark moves, that rectangle is where it
+ * was and where it is now; everything else keeps its pixels and its texture from earlier
+ * frames. The images are reallocated only when the frame size changes.
+ * <p>
+ * {@link #draw} and {@link #present} should alternate. A frame drawn before the previous one
+ * was presented is merged into it, and the next {@link #present} shows the newest frame.
+ */
+final class PreviewSurface {
+
+    /** Draws part of a frame. */
+    @FunctionalInterface
+    interface Painter {
+        void paint(Graphics2D g2d) throws IOException;
+    }
+
+    /** A drawn frame, to be passed to {@link #present} on the FX thread. */
+    static final class Frame {
+        private Frame() {
+        }
+    }
+
+    private static final Frame FRAME = new Frame();
+
+    // Drawing state, guarded by "this": the latest frame and how it was made
+    private BufferedImage scratch;
+    private int[] scratchPixels;
+    private Object background;  // what the scratch image was last filled from, or null if it must be redrawn
+    private int orientation;    // and how it was turned
+    private Rectangle overlay;  // area drawn over that background since
+    private Rectangle dirty = new Rectangle(); // changed since the last present, null for all of it
+
+    // Only touched on the FX thread
+    private PixelBuffer<IntBuffer> pixels;
+    private WritableImage fxImage;
+
+    /**
+     * Draws a frame showing {@code background} upright with an overlay on top. Only the part
+     * covered by the overlay it showed before and by {@code overlayBounds} is restored from the
+     * background and drawn over again.
+     *
+     * @param background    the image to show, which must not change while it is in use here
+     * @param orientation   EXIF orientation of {@code background}; the frame and the overlay
+     *                      are in display coordinates
+     * @param overlayBounds where {@code overlay} draws, or {@code null} if it may draw anywhere
+     */
+    synchronized Frame draw(BufferedImage background, int orientation, Rectangle overlayBounds, Painter overlay)
+            throws IOException {
+        int width = ImageOrientation.displayWidth(orientation, background.getWidth(), background.getHeight());
+        int height = ImageOrientation.displayHeight(orientation, background.getWidth(), background.getHeight());
+        resize(width, height);
+        Rectangle full = new Rectangle(width, height);
+        Rectangle area;
+        if (this.background != background || this.orientation != orientation
+                || this.overlay == null || overlayBounds == null) {
+            area = full;
+        } else if (this.overlay.isEmpty()) {
+            area = overlayBounds;
+        } else {
+            area = overlayBounds.isEmpty() ? this.overlay : this.overlay.union(overlayBounds);
+        }
+        area = area.intersection(full);
+
+        this.background = null; // until the frame is complete
+        if (!area.isEmpty()) {
+            Graphics2D g2d = scratch.createGraphics();
+            try {
+                g2d.clip(area);
+                // The image still holds the previous frame, so replace rather than blend
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.drawImage(background, ImageOrientation.storedToDisplay(orientation,
+                        background.getWidth(), background.getHeight()), null);
+                g2d.setComposite(AlphaComposite.SrcOver);
+                overlay.paint(g2d);
+            } finally {
+                g2d.dispose();
+            }
+        }
+        this.background = background;
+        this.orientation = orientation;
+        this.overlay = overlayBounds != null ? overlayBounds.intersection(full) : full;
+        markDirty(area.equals(full) ? null : area);
+        return FRAME;
+    }
+
+    /** Draws a frame of the given size from scratch. */
+    synchronized Frame drawAll(int width, int height, Painter painter) throws IOException {
+        resize(width, height);
+        background = null;
+        overlay = null;
+        Graphics2D g2d = scratch.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, width, height);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            painter.paint(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        markDirty(null);
+        return FRAME;
+    }
+
+    /**
+     * Shows the latest frame in {@code view}. Must be called on the FX thread. Waits while a
+     * frame is being drawn, which does not happen when draw and present alternate.
+     */
+    void present(Frame frame, ImageView view) {
+        synchronized (this) {
+            int width = scratch.getWidth();
+            int height = scratch.getHeight();
+            if (pixels == null || pixels.getWidth() != width || pixels.getHeight() != height) {
+                // Not attached to the view yet, so it may be filled directly
+                pixels = new PixelBuffer<>(width, height, IntBuffer.allocate(width * height),
+                        PixelFormat.getIntArgbPreInstance());
+                fxImage = new WritableImage(pixels);
+                dirty = null;
+            }
+            Rectangle area = dirty != null ? dirty : new Rectangle(width, height);
+            dirty = new Rectangle();
+            // A null region makes JavaFX upload the whole buffer
+            pixels.updateBuffer(buffer -> {
+                copy(scratchPixels, buffer.getBuffer().array(), width, area);
+                return area.isEmpty() ? Rectangle2D.EMPTY
+                        : area.width == width && area.height == height ? null
+                        : new Rectangle2D(area.x, area.y, area.width, area.height);
+            });
+        }
+        if (view.getImage() != fxImage) {
+            view.setImage(fxImage);
+        }
+    }
+
+    private void resize(int width, int height) {
+        if (scratch == null || scratch.getWidth() != width || scratch.getHeight() != height) {
+            scratch = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            scratchPixels = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+            background = null;
+            overlay = null;
+            dirty = null;
+        }
+    }
+
+    private static void copy(int[] from, int[] to, int width, Rectangle area) {
+        for (int y = area.y; y < area.y + area.height; y++) {
+            System.arraycopy(from, y * width + area.x, to, y * width + area.x, area.width);
+        }
+    }
+
+    private void markDirty(Rectangle area) {
+        if (area == null) {
+            dirty = null;
+        } else if (dirty != null) {
+            dirty = dirty.isEmpty() ? new Rectangle(area) : dirty.union(area);
+        }
+    }
+}
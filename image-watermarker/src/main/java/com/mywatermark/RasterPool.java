@@ -0,0 +1,119 @@
+package com.mywatermark;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable {@link BufferedImage}s keyed by width, height and image type.
+ * <p>
+ * Camera batches are mostly the same size, so decoding into, watermarking and converting with
+ * recycled rasters avoids allocating several huge arrays per file. Only idle images count
+ * against the size limit; an image that does not fit is simply left to the garbage collector.
+ * Pooled images keep whatever pixels they held last, so callers must overwrite them fully or
+ * take them from {@link #acquireCleared}.
+ */
+final class RasterPool {
+
+    private record Key(int width, int height, int type) { }
+
+    private final Map<Key, Deque<BufferedImage>> idle = new ConcurrentHashMap<>();
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    RasterPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /** A pool allowed to keep a quarter of the maximum heap in idle rasters. */
+    static RasterPool forHeap() {
+        return new RasterPool(Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    BufferedImage acquire(int width, int height, int type) {
+        BufferedImage image = poll(width, height, type);
+        return image != null ? image : new BufferedImage(width, height, type);
+    }
+
+    /** Like {@link #acquire}, but a reused image is cleared to transparent black first. */
+    BufferedImage acquireCleared(int width, int height, int type) {
+        BufferedImage image = poll(width, height, type);
+        if (image == null) {
+            return new BufferedImage(width, height, type); // new arrays are zeroed already
+        }
+        clear(image);
+        return image;
+    }
+
+    private BufferedImage poll(int width, int height, int type) {
+        Deque<BufferedImage> images = idle.get(new Key(width, height, type));
+        BufferedImage image = images != null ? images.pollFirst() : null;
+        if (image != null) {
+            retainedBytes.addAndGet(-sizeOf(image));
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return image;
+    }
+
+    void release(BufferedImage image) {
+        if (image == null || image.getType() == BufferedImage.TYPE_CUSTOM) return;
+        long size = sizeOf(image);
+        if (retainedBytes.addAndGet(size) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-size);
+            dropped.increment();
+            return;
+        }
+        idle.computeIfAbsent(new Key(image.getWidth(), image.getHeight(), image.getType()),
+                k -> new ConcurrentLinkedDeque<>()).offerFirst(image);
+    }
+
+    /** Drops all idle images, e.g. to give the heap back after an {@link OutOfMemoryError}. */
+    void clear() {
+        for (Deque<BufferedImage> images : idle.values()) {
+            BufferedImage image;
+            while ((image = images.pollFirst()) != null) {
+                retainedBytes.addAndGet(-sizeOf(image));
+            }
+        }
+    }
+
+    String stats() {
+        long total = hits.sum() + misses.sum();
+        return String.format("%d acquired, %.0f%% reused, %d dropped, %.1f MB idle",
+                total, total == 0 ? 0 : 100.0 * hits.sum() / total, dropped.sum(), retainedBytes.get() / (1024.0 * 1024.0));
+    }
+
+    private static void clear(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        for (int bank = 0; bank < buffer.getNumBanks(); bank++) {
+            if (buffer instanceof DataBufferInt ints) {
+                Arrays.fill(ints.getData(bank), 0);
+            } else if (buffer instanceof DataBufferByte bytes) {
+                Arrays.fill(bytes.getData(bank), (byte) 0);
+            } else if (buffer instanceof DataBufferUShort shorts) {
+                Arrays.fill(shorts.getData(bank), (short) 0);
+            } else {
+                for (int i = 0; i < buffer.getSize(); i++) buffer.setElem(bank, i, 0);
+            }
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
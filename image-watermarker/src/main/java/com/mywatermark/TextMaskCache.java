@@ -0,0 +1,101 @@
+package com.mywatermark;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared cache of laid out and rasterized watermark text.
+ * <p>
+ * With per-image text, a batch of thousands of photos typically carries only a handful of
+ * distinct strings. Measuring a string and rasterizing its rotated, antialiased glyphs is done
+ * once per (text, font, color, rotation); every further image just blits the cached sprite.
+ * Sprites are drawn at integer offsets, so they produce the same pixels as drawing the string
+ * directly onto an image.
+ */
+final class TextMaskCache {
+
+    private static final int MAX_LAYOUTS = 1024;
+    private static final int MAX_MASKS = 256;
+
+    /** Size of a string as the renderer lays it out: {@code height} is the font's line height. */
+    record Layout(int width, int height, int ascent) { }
+
+    /** A rasterized string; draw it at the text box's top-left corner plus ({@code dx}, {@code dy}). */
+    record Mask(BufferedImage image, int dx, int dy) { }
+
+    private record LayoutKey(String text, Font font) { }
+
+    private record MaskKey(String text, Font font, int argb, double rotation) { }
+
+    private final Map<LayoutKey, Layout> layouts = lru(MAX_LAYOUTS);
+    private final Map<MaskKey, Mask> masks = lru(MAX_MASKS);
+    private final FontMetricsSource metrics = new FontMetricsSource();
+
+    private static <K, V> Map<K, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized Layout layout(String text, Font font) {
+        return layouts.computeIfAbsent(new LayoutKey(text, font), key -> {
+            FontMetrics fm = metrics.get(font);
+            return new Layout(fm.stringWidth(text), fm.getHeight(), fm.getAscent());
+        });
+    }
+
+    /**
+     * The string rotated by {@code rotationDegrees} around the middle of its top edge, the same
+     * pivot the renderer uses for direct drawing, in the given color including its alpha.
+     */
+    synchronized Mask mask(String text, Font font, Color color, double rotationDegrees) {
+        MaskKey key = new MaskKey(text, font, color.getRGB(), rotationDegrees);
+        Mask mask = masks.get(key);
+        if (mask == null) {
+            mask = rasterize(text, font, color, rotationDegrees, layout(text, font));
+            masks.put(key, mask);
+        }
+        return mask;
+    }
+
+    private static Mask rasterize(String text, Font font, Color color, double rotationDegrees, Layout layout) {
+        AffineTransform rotation = AffineTransform.getRotateInstance(Math.toRadians(rotationDegrees), layout.width() / 2.0, 0);
+        // Glyphs can overhang their advance box (italics, accents), so leave a generous margin
+        int pad = Math.max(2, font.getSize() / 4);
+        Rectangle2D box = new Rectangle2D.Double(-pad, -pad, layout.width() + 2.0 * pad, layout.height() + 2.0 * pad);
+        Rectangle bounds = rotation.createTransformedShape(box).getBounds();
+
+        BufferedImage image = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(-bounds.x, -bounds.y);
+        g.transform(rotation);
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(text, 0, layout.ascent());
+        g.dispose();
+        return new Mask(image, bounds.x, bounds.y);
+    }
+
+    /** Font metrics without a screen or a target image, reusing one scratch graphics context. */
+    private static final class FontMetricsSource {
+        private final Graphics2D scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+        FontMetrics get(Font font) {
+            scratch.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            return scratch.getFontMetrics(font);
+        }
+    }
+}
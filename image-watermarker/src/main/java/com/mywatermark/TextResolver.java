@@ -0,0 +1,244 @@
+package com.mywatermark;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the watermark text into per-image text.
+ * <p>
+ * The text may contain {@code {token}} placeholders, which are replaced for each file by
+ * <ul>
+ *   <li>{@code {filename}}, {@code {basename}}, {@code {folder}} and {@code {year}};</li>
+ *   <li>{@code {exif:Artist}}, {@code {exif:Copyright}}, {@code {exif:DateTimeOriginal}},
+ *       {@code {exif:year}} and the other tags {@link ExifReader} knows;</li>
+ *   <li>any column of the mapping file for that image, e.g. {@code {photographer}}.</li>
+ * </ul>
+ * The optional mapping is a CSV file with a header row, keyed by a column named {@code file}
+ * or {@code filename} (otherwise the first column), or a JSON object keyed by file name whose
+ * values are either the text itself or an object of fields. With a mapping and text without
+ * tokens, each image gets the mapping's {@code text} column, and images the mapping does not
+ * list keep the typed text. Unknown tokens resolve to an empty string.
+ * <p>
+ * Parsed mappings are shared between renderers until the file changes on disk, because a
+ * renderer is created for every preview refresh.
+ */
+final class TextResolver {
+
+    private static final Logger logger = Logger.getLogger(TextResolver.class.getName());
+
+    private static final Pattern TOKEN = Pattern.compile("\\{([^{}]+)}");
+
+    private record CachedMapping(long lastModified, Map<String, Map<String, String>> rows) { }
+
+    private static final Map<String, CachedMapping> MAPPINGS = new ConcurrentHashMap<>();
+
+    private final String pattern;
+    private final String fallback; // text for images without a mapping row, when the mapping supplies the text
+    private final Map<String, Map<String, String>> mapping;
+
+    private TextResolver(String pattern, String fallback, Map<String, Map<String, String>> mapping) {
+        this.pattern = pattern;
+        this.fallback = fallback;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Returns a resolver for the settings, or {@code null} when the text is the same for every
+     * image and needs no resolving.
+     */
+    static TextResolver forSettings(WatermarkSettings settings) throws IOException {
+        boolean hasMapping = settings.textMappingPath != null && !settings.textMappingPath.isBlank();
+        String text = settings.text != null ? settings.text : "";
+        if (TOKEN.matcher(text).find()) {
+            return new TextResolver(text, null, hasMapping ? loadMapping(new File(settings.textMappingPath)) : Map.of());
+        }
+        if (!hasMapping) return null;
+
+        File mappingFile = new File(settings.textMappingPath);
+        Map<String, Map<String, String>> mapping = loadMapping(mappingFile);
+        if (mapping.values().stream().noneMatch(row -> row.containsKey("text"))) {
+            logger.warning("Text mapping " + mappingFile.getName() + " has no 'text' column and the watermark text has"
+                    + " no {tokens}, so the mapping is not used.");
+            return null;
+        }
+        return new TextResolver("{text}", text, mapping);
+    }
+
+    /**
+     * The text to draw on {@code file}, or the pattern with tokens blanked when it is {@code null}.
+     *
+     * @param exif the file's tags from {@link ExifReader#read}, read once by the caller
+     */
+    String resolve(File file, Map<String, String> exif) {
+        Map<String, String> row = file != null ? row(file.getName()) : Map.of();
+        if (fallback != null) {
+            return row.getOrDefault("text", fallback);
+        }
+
+        Matcher matcher = TOKEN.matcher(pattern);
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(token(matcher.group(1).trim(), file, row, exif)));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private String token(String name, File file, Map<String, String> row, Map<String, String> exif) {
+        String key = name.toLowerCase(Locale.ROOT);
+        if (key.startsWith("exif:")) {
+            String tag = name.substring(5).trim();
+            if (tag.equalsIgnoreCase("year")) {
+                String date = exif.getOrDefault("DateTimeOriginal", exif.getOrDefault("DateTime", ""));
+                return date.length() >= 4 ? date.substring(0, 4) : "";
+            }
+            return exif.entrySet().stream().filter(e -> e.getKey().equalsIgnoreCase(tag))
+                    .map(Map.Entry::getValue).findFirst().orElse("");
+        }
+        if (row.containsKey(key)) return row.get(key);
+        if (file == null) return "";
+        return switch (key) {
+            case "filename" -> file.getName();
+            case "basename" -> {
+                int dot = file.getName().lastIndexOf('.');
+                yield dot > 0 ? file.getName().substring(0, dot) : file.getName();
+            }
+            case "folder" -> file.getParentFile() != null ? file.getParentFile().getName() : "";
+            case "year" -> String.valueOf(Year.now().getValue());
+            default -> "";
+        };
+    }
+
+    /** Mapping rows are looked up by file name, then by name without extension, ignoring case. */
+    private Map<String, String> row(String fileName) {
+        String key = fileName.toLowerCase(Locale.ROOT);
+        Map<String, String> row = mapping.get(key);
+        if (row == null) {
+            int dot = key.lastIndexOf('.');
+            if (dot > 0) row = mapping.get(key.substring(0, dot));
+        }
+        return row != null ? row : Map.of();
+    }
+
+    private static Map<String, Map<String, String>> loadMapping(File file) throws IOException {
+        long lastModified = file.lastModified();
+        CachedMapping cached = MAPPINGS.get(file.getAbsolutePath());
+        if (cached != null && cached.lastModified() == lastModified) {
+            return cached.rows();
+        }
+        if (!file.isFile()) {
+            throw new IOException("Text mapping file not found: " + file.getName());
+        }
+        Map<String, Map<String, String>> rows = file.getName().toLowerCase(Locale.ROOT).endsWith(".json")
+                ? parseJson(file)
+                : parseCsv(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+        MAPPINGS.put(file.getAbsolutePath(), new CachedMapping(lastModified, rows));
+        logger.info("Loaded " + rows.size() + " text mapping row(s) from " + file.getName());
+        return rows;
+    }
+
+    private static Map<String, Map<String, String>> parseJson(File file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            JsonElement root = JsonParser.parseReader(reader);
+            if (!root.isJsonObject()) {
+                throw new IOException("Text mapping must be a JSON object keyed by file name: " + file.getName());
+            }
+            Map<String, Map<String, String>> rows = new HashMap<>();
+            for (Map.Entry<String, JsonElement> entry : root.getAsJsonObject().entrySet()) {
+                Map<String, String> fields = new HashMap<>();
+                if (entry.getValue().isJsonObject()) {
+                    JsonObject object = entry.getValue().getAsJsonObject();
+                    for (Map.Entry<String, JsonElement> field : object.entrySet()) {
+                        if (field.getValue().isJsonPrimitive()) {
+                            fields.put(field.getKey().toLowerCase(Locale.ROOT), field.getValue().getAsString());
+                        }
+                    }
+                } else if (entry.getValue().isJsonPrimitive()) {
+                    fields.put("text", entry.getValue().getAsString());
+                }
+                rows.put(entry.getKey().toLowerCase(Locale.ROOT), fields);
+            }
+            return rows;
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Invalid text mapping " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, Map<String, String>> parseCsv(String content) {
+        List<List<String>> records = csvRecords(content);
+        Map<String, Map<String, String>> rows = new HashMap<>();
+        if (records.isEmpty()) return rows;
+
+        List<String> header = records.get(0).stream().map(h -> h.trim().toLowerCase(Locale.ROOT)).toList();
+        int keyColumn = header.indexOf("file");
+        if (keyColumn < 0) keyColumn = header.indexOf("filename");
+        if (keyColumn < 0) keyColumn = 0;
+        for (List<String> record : records.subList(1, records.size())) {
+            if (record.size() <= keyColumn || record.get(keyColumn).isBlank()) continue;
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < Math.min(header.size(), record.size()); i++) {
+                fields.put(header.get(i), record.get(i));
+            }
+            rows.put(record.get(keyColumn).trim().toLowerCase(Locale.ROOT), fields);
+        }
+        return rows;
+    }
+
+    /** RFC 4180 records: comma separated, fields optionally quoted with {@code ""} as an escaped quote. */
+    private static List<List<String>> csvRecords(String content) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int start = content.startsWith("\uFEFF") ? 1 : 0; // BOM written by spreadsheet exports
+        for (int i = start; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < content.length() && content.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n') i++;
+                record.add(field.toString());
+                field.setLength(0);
+                if (!(record.size() == 1 && record.get(0).isEmpty())) records.add(record);
+                record = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        if (field.length() > 0 || !record.isEmpty()) {
+            record.add(field.toString());
+            records.add(record);
+        }
+        return records;
+    }
+}
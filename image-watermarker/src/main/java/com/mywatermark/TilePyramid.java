@@ -0,0 +1,247 @@
+package com.mywatermark;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lazily decoded tile pyramid over one image file, for zooming into images far larger than
+ * the screen.
+ * <p>
+ * Level {@code n} is the image subsampled by {@code 2^n}, cut into {@link #TILE_SIZE} square
+ * tiles. Nothing is decoded up front: {@link #paint} works out which tiles of the best level
+ * for the current zoom intersect the viewport and decodes only the missing ones, in one source
+ * region per repaint, through {@link ImageReadParam#setSourceRegion} and
+ * {@link ImageReadParam#setSourceSubsampling}. Decoded tiles are kept in a small LRU cache,
+ * so panning around and zooming back and forth mostly hits memory.
+ * <p>
+ * Tiles hold the pixels as stored. Callers work with the image upright, as its EXIF
+ * orientation says it is shown: sizes, origins and the painted view are in display coordinates.
+ */
+final class TilePyramid implements Closeable {
+
+    static final int TILE_SIZE = 256;
+    static final int MAX_CACHED_TILES = 192; // about 48 MB of RGB tiles
+
+    private record TileKey(int level, int column, int row) { }
+
+    private final File file;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int width;  // stored pixels
+    private final int height;
+    private final int orientation;
+    private final int maxLevel;
+    private final Map<TileKey, BufferedImage> cache = new LinkedHashMap<>(MAX_CACHED_TILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+    private BufferedImage overview;
+    private long decodedTiles;
+    private long cachedTileHits;
+
+    TilePyramid(File file) throws IOException {
+        this.file = file;
+        this.input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Could not open image: " + file.getName());
+        }
+        var readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format: " + file.getName());
+        }
+        this.reader = readers.next();
+        reader.setInput(input, false, true);
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+        this.orientation = ExifReader.orientation(file);
+        int level = 0;
+        while (Math.max(width, height) >> level > TILE_SIZE) level++;
+        this.maxLevel = level;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /** Width of the image as shown, after its EXIF orientation. */
+    int getWidth() {
+        return ImageOrientation.displayWidth(orientation, width, height);
+    }
+
+    int getHeight() {
+        return ImageOrientation.displayHeight(orientation, width, height);
+    }
+
+    int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * The whole image at the coarsest level, at most {@link #TILE_SIZE} pixels on its long side,
+     * in stored orientation.
+     * Kept outside the LRU cache because it is what a subsampled full decode would give, and
+     * that is the expensive read this class otherwise avoids.
+     */
+    synchronized BufferedImage getOverview() throws IOException {
+        if (overview == null) {
+            overview = tiles(maxLevel, 0, 0, 0, 0, 1, 1)[0][0];
+        }
+        return overview;
+    }
+
+    /**
+     * The coarsest level that still has at least one decoded pixel per screen pixel at the
+     * given zoom, where a scale of 1 shows the image at 100%.
+     */
+    int levelFor(double scale) {
+        int level = 0;
+        while (level < maxLevel && scale * (1 << (level + 1)) <= 1) level++;
+        return level;
+    }
+
+    /**
+     * Paints the part of the image visible in a {@code viewWidth} x {@code viewHeight} viewport
+     * whose top-left corner shows image pixel ({@code originX}, {@code originY}) at
+     * {@code scale} screen pixels per image pixel. Transforms already set on {@code g2d} apply.
+     */
+    synchronized void paint(Graphics2D g2d, double scale, double originX, double originY,
+                            int viewWidth, int viewHeight) throws IOException {
+        int level = levelFor(scale);
+        int step = 1 << level;
+        int levelWidth = (width + step - 1) / step;
+        int levelHeight = (height + step - 1) / step;
+        int columns = (levelWidth + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (levelHeight + TILE_SIZE - 1) / TILE_SIZE;
+
+        // Visible part of the image, in level pixels
+        Rectangle2D visible = ImageOrientation.displayToStored(orientation, width, height).createTransformedShape(
+                new Rectangle2D.Double(originX, originY, viewWidth / scale, viewHeight / scale)).getBounds2D();
+        double left = Math.max(0, visible.getMinX() / step);
+        double top = Math.max(0, visible.getMinY() / step);
+        double right = Math.min(levelWidth, visible.getMaxX() / step);
+        double bottom = Math.min(levelHeight, visible.getMaxY() / step);
+        if (right <= left || bottom <= top) return;
+        int firstColumn = (int) (left / TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (int) Math.ceil(right / TILE_SIZE) - 1);
+        int firstRow = (int) (top / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (int) Math.ceil(bottom / TILE_SIZE) - 1);
+
+        Graphics2D g = (Graphics2D) g2d.create();
+        try {
+            g.transform(new AffineTransform(scale, 0, 0, scale, -originX * scale, -originY * scale));
+            g.transform(ImageOrientation.storedToDisplay(orientation, width, height));
+            g.scale(step, step);
+            // Show real pixels when zoomed past 100%, so watermark edges can be judged
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scale >= 1
+                    ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                    : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            BufferedImage[][] tiles = tiles(level, firstColumn, lastColumn, firstRow, lastRow, columns, rows);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    g.drawImage(tiles[row - firstRow][column - firstColumn], column * TILE_SIZE, row * TILE_SIZE, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Returns the requested block of tiles of one level, indexed {@code [row][column]} relative
+     * to the first ones. All uncached tiles are decoded with a single read of their bounding
+     * region, widened by one tile on every side so that small pans are already cached. Baseline
+     * JPEG and PNG can only be decoded top to bottom, so a read costs about the same whether it
+     * covers one tile or a whole band, but every additional read pays that cost again.
+     */
+    private BufferedImage[][] tiles(int level, int firstColumn, int lastColumn, int firstRow, int lastRow,
+                                    int columns, int rows) throws IOException {
+        BufferedImage[][] tiles = new BufferedImage[lastRow - firstRow + 1][lastColumn - firstColumn + 1];
+        int missingLeft = Integer.MAX_VALUE, missingTop = Integer.MAX_VALUE, missingRight = -1, missingBottom = -1;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                BufferedImage tile = cache.get(new TileKey(level, column, row));
+                if (tile != null) {
+                    tiles[row - firstRow][column - firstColumn] = tile;
+                    cachedTileHits++;
+                } else {
+                    missingLeft = Math.min(missingLeft, column);
+                    missingTop = Math.min(missingTop, row);
+                    missingRight = Math.max(missingRight, column);
+                    missingBottom = Math.max(missingBottom, row);
+                }
+            }
+        }
+        if (missingRight < 0) return tiles;
+
+        // Prefetch a ring of neighbours as long as it cannot push visible tiles out of the cache
+        int ring = (lastColumn - firstColumn + 3) * (lastRow - firstRow + 3) <= MAX_CACHED_TILES ? 1 : 0;
+        int left = Math.max(0, missingLeft - ring);
+        int top = Math.max(0, missingTop - ring);
+        int right = Math.min(columns - 1, missingRight + ring);
+        int bottom = Math.min(rows - 1, missingBottom + ring);
+
+        int step = 1 << level;
+        int sourceSize = TILE_SIZE * step;
+        int x = left * sourceSize;
+        int y = top * sourceSize;
+        Rectangle region = new Rectangle(x, y, Math.min((right - left + 1) * sourceSize, width - x),
+                Math.min((bottom - top + 1) * sourceSize, height - y));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        param.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage block = reader.read(0, param);
+
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                boolean visible = row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn;
+                TileKey key = new TileKey(level, column, row);
+                if (visible ? tiles[row - firstRow][column - firstColumn] != null : cache.containsKey(key)) continue;
+                BufferedImage tile = cut(block, (column - left) * TILE_SIZE, (row - top) * TILE_SIZE);
+                cache.put(key, tile);
+                decodedTiles++;
+                if (visible) tiles[row - firstRow][column - firstColumn] = tile;
+            }
+        }
+        return tiles;
+    }
+
+    /** Copies one tile out of a decoded block, so a cached tile does not keep the whole block alive. */
+    private static BufferedImage cut(BufferedImage block, int x, int y) {
+        int tileWidth = Math.min(TILE_SIZE, block.getWidth() - x);
+        int tileHeight = Math.min(TILE_SIZE, block.getHeight() - y);
+        BufferedImage tile = new BufferedImage(tileWidth, tileHeight,
+                block.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.drawImage(block.getSubimage(x, y, tileWidth, tileHeight), 0, 0, null);
+        g.dispose();
+        return tile;
+    }
+
+    synchronized String stats() {
+        return decodedTiles + " tiles decoded, " + cachedTileHits + " served from cache, " + cache.size() + " cached";
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        cache.clear();
+        overview = null;
+        reader.dispose();
+        input.close();
+    }
+}
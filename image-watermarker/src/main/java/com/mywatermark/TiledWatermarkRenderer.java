@@ -0,0 +1,108 @@
+package com.mywatermark;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders a repeating text watermark that covers the whole image.
+ * <p>
+ * The rotated text is rasterized once into a small tile and cached. The image is then covered
+ * by blitting that tile onto a rotated lattice at integer offsets, which Java2D handles with a
+ * plain row-wise alpha blend. No glyphs are laid out and no pixels are resampled per repetition,
+ * so the cost stays close to a single blend pass regardless of how many repetitions are visible.
+ */
+final class TiledWatermarkRenderer {
+
+    private TileKey cachedKey;
+    private Tile cachedTile;
+
+    /**
+     * Covers the given area with the tiled watermark.
+     *
+     * @param spacing gap in pixels between neighbouring repetitions, horizontally and vertically
+     * @param stagger horizontal shift of every second row as a fraction of the cell width (0 = grid)
+     */
+    void render(Graphics2D g2d, int width, int height, String text, Font font, Color color,
+                double rotationDegrees, int spacing, double stagger) {
+        if (text == null || text.isEmpty() || width <= 0 || height <= 0) return;
+
+        Tile tile = getTile(text, font, color, rotationDegrees, spacing, stagger);
+        BufferedImage image = tile.image();
+
+        double theta = Math.toRadians(rotationDegrees);
+        double cos = Math.cos(theta);
+        double sin = Math.sin(theta);
+        double centerX = width / 2.0;
+        double centerY = height / 2.0;
+
+        // Walk the lattice in unrotated space far enough out to cover every corner of the image.
+        double reach = Math.hypot(width, height) / 2.0 + Math.max(tile.cellWidth(), tile.cellHeight());
+        int columns = (int) Math.ceil(reach / tile.cellWidth());
+        int rows = (int) Math.ceil(reach / tile.cellHeight());
+
+        for (int row = -rows; row <= rows; row++) {
+            double rowShift = (row & 1) != 0 ? tile.staggerShift() : 0;
+            double ly = row * tile.cellHeight();
+            for (int column = -columns; column <= columns; column++) {
+                double lx = column * tile.cellWidth() + rowShift;
+                int x = (int) Math.round(centerX + lx * cos - ly * sin) - image.getWidth() / 2;
+                int y = (int) Math.round(centerY + lx * sin + ly * cos) - image.getHeight() / 2;
+                if (x >= width || y >= height || x + image.getWidth() <= 0 || y + image.getHeight() <= 0) continue;
+                g2d.drawImage(image, x, y, null);
+            }
+        }
+    }
+
+    private synchronized Tile getTile(String text, Font font, Color color, double rotationDegrees, int spacing, double stagger) {
+        TileKey key = new TileKey(text, font, color.getRGB(), rotationDegrees,
+                Math.max(0, spacing), Math.max(0, Math.min(1, stagger)));
+        if (!key.equals(cachedKey)) {
+            cachedTile = rasterizeTile(key);
+            cachedKey = key;
+        }
+        return cachedTile;
+    }
+
+    private static Tile rasterizeTile(TileKey key) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D sg = scratch.createGraphics();
+        FontMetrics fm = sg.getFontMetrics(key.font());
+        int textWidth = Math.max(1, fm.stringWidth(key.text()));
+        int textHeight = Math.max(1, fm.getAscent() + fm.getDescent());
+        int ascent = fm.getAscent();
+        sg.dispose();
+
+        // The tile only has to hold the rotated text; the lattice takes care of the spacing.
+        double theta = Math.toRadians(key.rotation());
+        double cos = Math.abs(Math.cos(theta));
+        double sin = Math.abs(Math.sin(theta));
+        int tileWidth = (int) Math.ceil(textWidth * cos + textHeight * sin) + 2;
+        int tileHeight = (int) Math.ceil(textWidth * sin + textHeight * cos) + 2;
+
+        BufferedImage image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setFont(key.font());
+        g2d.setColor(new Color(key.argb(), true));
+        AffineTransform transform = new AffineTransform();
+        transform.translate(tileWidth / 2.0, tileHeight / 2.0);
+        transform.rotate(theta);
+        g2d.setTransform(transform);
+        g2d.drawString(key.text(), -textWidth / 2.0f, ascent - textHeight / 2.0f);
+        g2d.dispose();
+
+        int cellWidth = textWidth + key.spacing();
+        int cellHeight = textHeight + key.spacing();
+        return new Tile(image, cellWidth, cellHeight, cellWidth * key.stagger());
+    }
+
+    private record TileKey(String text, Font font, int argb, double rotation, int spacing, double stagger) { }
+
+    private record Tile(BufferedImage image, int cellWidth, int cellHeight, double staggerShift) { }
+}
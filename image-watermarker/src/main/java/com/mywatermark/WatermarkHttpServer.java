@@ -0,0 +1,483 @@
+package com.mywatermark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded HTTP service that watermarks uploaded images with a saved template.
+ * <p>
+ * {@code POST /watermark?template=NAME[&format=PNG|JPEG][&quality=0-100][&filename=NAME]} with
+ * the image as the request body returns the watermarked image, exactly as the desktop export
+ * would write it: text tokens are resolved for {@code filename} and the upload's EXIF tags, the
+ * watermark follows the EXIF orientation and the tag is kept.
+ * <p>
+ * The upload is read once through a memory-cached {@link ImageInputStream}, which the decoder
+ * and then the EXIF scan read from; the result is encoded into a single array. Both are far
+ * smaller than the decoded raster, and the status is only sent once the image is complete, so a
+ * failure is never reported as a truncated 200. Uploads over {@code --max-upload} megabytes and
+ * images whose header declares more than {@code --max-megapixels} are refused with 413 before
+ * anything is decoded. A request that times out stops at the next step (decode, render,
+ * encode) and an ongoing decode is aborted, so the slot is freed soon after the 504.
+ * {@code GET /metrics} returns request counters and latency percentiles as JSON.
+ * <p>
+ * Templates are the JSON files written by the desktop application to
+ * {@code ~/.photo-watermark-templates}; they are re-read when their modification time changes.
+ * <p>
+ * Usage: {@code java -cp <classpath> com.mywatermark.WatermarkHttpServer [--port 8080]
+ * [--bind 127.0.0.1] [--max-concurrent N] [--timeout SECONDS] [--max-upload MB]
+ * [--max-megapixels N]}
+ */
+public final class WatermarkHttpServer {
+
+    private static final Logger logger = Logger.getLogger(WatermarkHttpServer.class.getName());
+
+    private final Path templatesDir = Paths.get(System.getProperty("user.home"), ".photo-watermark-templates");
+    private final Map<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final long timeoutMillis;
+    private final long maxUploadBytes;
+    private final long maxPixels;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "watermark-http-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Metrics metrics = new Metrics();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private record CachedTemplate(long modified, WatermarkRenderer renderer) { }
+
+    WatermarkHttpServer(InetSocketAddress address, int maxConcurrent, long timeoutMillis,
+                        long maxUploadBytes, long maxPixels) throws IOException {
+        this.permits = new Semaphore(maxConcurrent);
+        this.timeoutMillis = timeoutMillis;
+        this.maxUploadBytes = maxUploadBytes;
+        this.maxPixels = maxPixels;
+
+        this.server = HttpServer.create(address, 0);
+        // A couple of spare threads so /metrics and 503 replies are not stuck behind busy renders
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrent + 2, r -> {
+            Thread thread = new Thread(r, "watermark-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/watermark", this::handleWatermark);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        String bind = "127.0.0.1";
+        int maxConcurrent = Math.max(1, Runtime.getRuntime().availableProcessors());
+        long timeoutSeconds = 60;
+        long maxUploadMegabytes = 100;
+        long maxMegapixels = 100;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--bind" -> bind = args[i + 1];
+                case "--max-concurrent" -> maxConcurrent = Integer.parseInt(args[i + 1]);
+                case "--timeout" -> timeoutSeconds = Long.parseLong(args[i + 1]);
+                case "--max-upload" -> maxUploadMegabytes = Long.parseLong(args[i + 1]);
+                case "--max-megapixels" -> maxMegapixels = Long.parseLong(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        System.setProperty("java.awt.headless", "true");
+        WatermarkHttpServer server = new WatermarkHttpServer(new InetSocketAddress(bind, port), maxConcurrent,
+                timeoutSeconds * 1000, maxUploadMegabytes * 1024 * 1024, maxMegapixels * 1_000_000);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    void start() {
+        server.start();
+        logger.info("Watermark HTTP service listening on " + server.getAddress() + " (max " + permits.availablePermits()
+                + " concurrent requests, " + timeoutMillis / 1000 + " s timeout, " + maxUploadBytes / (1024 * 1024)
+                + " MB uploads, " + maxPixels / 1_000_000 + " MP images, templates in " + templatesDir + ")");
+    }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handleWatermark(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        metrics.requests.increment();
+        if (!exchange.getRequestMethod().equals("POST")) {
+            sendError(exchange, 405, "Use POST with the image as the request body.");
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            metrics.rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Too many concurrent requests.");
+            return;
+        }
+
+        metrics.inFlight.incrementAndGet();
+        AtomicBoolean committed = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<ImageReader> decoding = new AtomicReference<>();
+        ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+            metrics.timeouts.increment();
+            logger.warning("Request timed out after " + timeoutMillis + " ms from " + exchange.getRemoteAddress());
+            // The handler checks this between steps and gives up; a decode in progress is aborted
+            cancelled.set(true);
+            ImageReader reader = decoding.get();
+            if (reader != null) {
+                reader.abort();
+            }
+            if (committed.compareAndSet(false, true)) {
+                sendErrorQuietly(exchange, 504, "Request timed out.");
+            }
+            // Closing the exchange aborts whatever stream the handler is blocked on
+            exchange.close();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        try {
+            String templateName;
+            ExportOptions options = new ExportOptions();
+            File file;
+            try {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                templateName = query.get("template");
+                if (templateName == null || !templateName.matches("[a-zA-Z0-9_-]+")) {
+                    fail(exchange, committed, 400, "Missing or invalid 'template' parameter.");
+                    return;
+                }
+                options.format = query.getOrDefault("format", "PNG").toUpperCase();
+                if (!options.format.equals("PNG") && !options.format.equals("JPEG")) {
+                    fail(exchange, committed, 400, "Unsupported format: " + options.format);
+                    return;
+                }
+                options.quality = Double.parseDouble(query.getOrDefault("quality", "80"));
+                if (!Double.isFinite(options.quality) || options.quality < 0 || options.quality > 100) {
+                    fail(exchange, committed, 400, "The 'quality' parameter must be between 0 and 100.");
+                    return;
+                }
+                // Only the name is used, for text tokens; the upload never touches the disk
+                file = new File(new File(query.getOrDefault("filename", "upload")).getName());
+                String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+                if (contentLength != null && Long.parseLong(contentLength.trim()) > maxUploadBytes) {
+                    fail(exchange, committed, 413, "The upload is larger than " + maxUploadBytes + " bytes.");
+                    return;
+                }
+            } catch (IllegalArgumentException e) { // includes NumberFormatException
+                fail(exchange, committed, 400, "Invalid request: " + e.getMessage());
+                return;
+            }
+
+            WatermarkRenderer renderer = loadTemplate(templateName);
+            if (renderer == null) {
+                fail(exchange, committed, 404, "Unknown template: " + templateName);
+                return;
+            }
+
+            LimitedInputStream body = new LimitedInputStream(exchange.getRequestBody(), maxUploadBytes);
+            // The only copy of the upload: the decoder reads from this cache, then the EXIF scan
+            try (ImageInputStream upload = new MemoryCacheImageInputStream(body)) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(upload);
+                if (!readers.hasNext()) {
+                    fail(exchange, committed, 415, "The request body is not a supported image.");
+                    return;
+                }
+                ImageReader reader = readers.next();
+                BufferedImage originalImage;
+                try {
+                    reader.setInput(upload, false, true);
+                    long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                    if (pixels > maxPixels) {
+                        fail(exchange, committed, 413, "The image has more than " + maxPixels + " pixels.");
+                        return;
+                    }
+                    decoding.set(reader);
+                    if (cancelled.get()) return;
+                    originalImage = reader.read(0);
+                    metrics.pixels.add(pixels);
+                } catch (IOException e) {
+                    if (body.exceeded) {
+                        fail(exchange, committed, 413, "The upload is larger than " + maxUploadBytes + " bytes.");
+                        return;
+                    }
+                    throw e;
+                } finally {
+                    decoding.set(null);
+                    reader.dispose();
+                }
+                if (cancelled.get()) return;
+
+                upload.seek(0);
+                WatermarkRenderer fileRenderer = renderer.forFile(file, ExifReader.read(new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return upload.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return upload.read(b, off, len);
+                    }
+                }));
+                BufferedImage watermarkedImage = fileRenderer.render(originalImage);
+                if (cancelled.get()) return;
+
+                ByteArrayImageOutputStream encoded = new ByteArrayImageOutputStream();
+                ImageExporter.write(watermarkedImage, encoded, options, null, fileRenderer.getOrientation());
+                encoded.close();
+
+                if (!committed.compareAndSet(false, true)) return; // timed out while encoding
+                exchange.getResponseHeaders().set("Content-Type", options.format.equals("JPEG") ? "image/jpeg" : "image/png");
+                exchange.sendResponseHeaders(200, encoded.size());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    encoded.writeTo(out);
+                }
+                metrics.succeeded.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            metrics.errors.increment();
+            logger.log(Level.WARNING, "Watermark request failed from " + exchange.getRemoteAddress(), e);
+            if (committed.compareAndSet(false, true)) {
+                sendErrorQuietly(exchange, 500, "Watermarking failed: " + e.getMessage());
+            }
+        } catch (OutOfMemoryError e) {
+            // Within the pixel limit, but too much at once with the other requests in flight
+            metrics.errors.increment();
+            logger.log(Level.WARNING, "Out of memory watermarking an upload from " + exchange.getRemoteAddress(), e);
+            if (committed.compareAndSet(false, true)) {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                sendErrorQuietly(exchange, 503, "Not enough memory for this image right now.");
+            }
+        } finally {
+            deadline.cancel(false);
+            exchange.close();
+            metrics.inFlight.decrementAndGet();
+            permits.release();
+            metrics.latency.record((System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("requests", metrics.requests.sum());
+        snapshot.put("succeeded", metrics.succeeded.sum());
+        snapshot.put("inFlight", metrics.inFlight.get());
+        snapshot.put("rejected", metrics.rejected.sum());
+        snapshot.put("timeouts", metrics.timeouts.sum());
+        snapshot.put("errors", metrics.errors.sum());
+        snapshot.put("clientErrors", metrics.clientErrors.sum());
+        snapshot.put("megapixels", metrics.pixels.sum() / 1_000_000.0);
+        snapshot.put("latencyMillis", metrics.latency.snapshot());
+        byte[] json = new GsonBuilder().setPrettyPrinting().create().toJson(snapshot).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private WatermarkRenderer loadTemplate(String name) throws IOException {
+        Path file = templatesDir.resolve(name + ".json");
+        if (!Files.isRegularFile(file)) {
+            templates.remove(name);
+            return null;
+        }
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        CachedTemplate cached = templates.get(name);
+        if (cached != null && cached.modified() == modified) {
+            return cached.renderer();
+        }
+        WatermarkSettings settings;
+        try (Reader reader = new FileReader(file.toFile(), StandardCharsets.UTF_8)) {
+            settings = new Gson().fromJson(reader, WatermarkSettings.class);
+        }
+        if (settings == null) {
+            throw new IOException("The template file is empty or corrupt: " + file.getFileName());
+        }
+        WatermarkRenderer renderer = new WatermarkRenderer(settings);
+        templates.put(name, new CachedTemplate(modified, renderer));
+        logger.info("Loaded template '" + name + "' from " + file);
+        return renderer;
+    }
+
+    private void fail(HttpExchange exchange, AtomicBoolean committed, int status, String message) {
+        metrics.clientErrors.increment();
+        if (committed.compareAndSet(false, true)) {
+            sendErrorQuietly(exchange, status, message);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendErrorQuietly(HttpExchange exchange, int status, String message) {
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not send error response", e);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    /** Counts the request body and stops at the upload limit, for bodies without a Content-Length. */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+        volatile boolean exceeded;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            count += n;
+            if (count > limit) {
+                exceeded = true;
+                throw new IOException("Upload larger than " + limit + " bytes");
+            }
+        }
+    }
+
+    private static final class Metrics {
+        final LongAdder requests = new LongAdder();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder clientErrors = new LongAdder();
+        final LongAdder pixels = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * Lock-free latency histogram with buckets growing by a quarter power of two, which keeps
+     * percentile estimates within about 20% from one millisecond up to several minutes.
+     */
+    private static final class LatencyHistogram {
+        private static final int BUCKETS = 80;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        void record(long millis) {
+            int bucket = millis <= 1 ? 0 : (int) Math.min(BUCKETS - 1, Math.ceil(4 * Math.log(millis) / Math.log(2)));
+            counts.incrementAndGet(bucket);
+            total.increment();
+            sum.add(millis);
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long count = total.sum();
+            snapshot.put("count", count);
+            snapshot.put("mean", count == 0 ? 0 : (double) sum.sum() / count);
+            snapshot.put("p50", percentile(0.50));
+            snapshot.put("p90", percentile(0.90));
+            snapshot.put("p99", percentile(0.99));
+            return snapshot;
+        }
+
+        private long percentile(double p) {
+            long[] snapshot = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                count += snapshot[i];
+            }
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.round(Math.pow(2, i / 4.0)); // bucket upper bound
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.mywatermark;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies a watermark described by {@link WatermarkSettings} to images.
+ * <p>
+ * A renderer is immutable once created and can be shared between threads. The image
+ * watermark, if any, is loaded once in the constructor instead of once per image. When the
+ * text contains {@link TextResolver} tokens, {@link #forFile} derives a renderer with the
+ * text for one image that shares everything else with this one. It also picks up the file's
+ * EXIF orientation: positions stay in the upright view, and the watermark is drawn into the
+ * stored pixels through {@link ImageOrientation#displayToStored}.
+ */
+final class WatermarkRenderer {
+
+    private static final Logger logger = Logger.getLogger(WatermarkRenderer.class.getName());
+
+    // Shared so the cached tile survives across renderers created for every preview update
+    private static final TiledWatermarkRenderer TILED_RENDERER = new TiledWatermarkRenderer();
+    // Shared so batches with a few distinct per-image strings lay out and rasterize each only once
+    private static final TextMaskCache TEXT_CACHE = new TextMaskCache();
+
+    private final WatermarkSettings settings;
+    private final String mode;
+    private final Font font;
+    private final Color textColor;
+    private final BufferedImage watermarkImage;
+    private final TextResolver textResolver;
+    private final String text;
+    private final int orientation;
+    private final int textWidth;
+    private final int textHeight;
+    private final double watermarkLuminance;
+
+    WatermarkRenderer(WatermarkSettings settings) throws IOException {
+        this.settings = settings;
+        this.mode = normalizeMode(settings.mode);
+
+        int fontStyle = Font.PLAIN;
+        if (settings.bold) fontStyle |= Font.BOLD;
+        if (settings.italic) fontStyle |= Font.ITALIC;
+        this.font = new Font(settings.fontFamily != null ? settings.fontFamily : "Arial", fontStyle, settings.fontSize);
+
+        Color base = parseColor(settings.color);
+        this.textColor = new Color(base.getRed() / 255f, base.getGreen() / 255f, base.getBlue() / 255f,
+                (float) Math.max(0, Math.min(1, settings.opacity)));
+
+        if (mode.equals("IMAGE") && settings.imageWatermarkPath != null) {
+            File file = new File(settings.imageWatermarkPath);
+            this.watermarkImage = ImageIO.read(file);
+            if (watermarkImage == null) {
+                throw new IOException("Could not read the watermark image file: " + file.getName());
+            }
+        } else {
+            this.watermarkImage = null;
+        }
+
+        this.textResolver = mode.equals("IMAGE") ? null : TextResolver.forSettings(settings);
+        this.text = textResolver != null ? textResolver.resolve(null, Map.of()) : settings.text;
+        this.orientation = ImageOrientation.NORMAL;
+        // Size of the text box and brightness of the logo, for automatic placement
+        TextMaskCache.Layout layout = TEXT_CACHE.layout(text != null ? text : "", font);
+        this.textWidth = layout.width();
+        this.textHeight = layout.height();
+        this.watermarkLuminance = watermarkImage != null ? LuminanceIndex.meanLuminance(watermarkImage) : Double.NaN;
+    }
+
+    /**
+     * The mode of {@code settings} in the upper-case form this class switches on. Templates from
+     * older builds have none and hand-edited ones may use another case or an unknown mode; those
+     * get text mode rather than an image without a watermark.
+     */
+    static String normalizeMode(String mode) {
+        String normalized = mode != null ? mode.trim().toUpperCase(Locale.ROOT) : "TEXT";
+        return switch (normalized) {
+            case "TEXT", "IMAGE", "TILED" -> normalized;
+            default -> {
+                logger.warning("Unknown watermark mode '" + mode + "', using text mode.");
+                yield "TEXT";
+            }
+        };
+    }
+
+    private WatermarkRenderer(WatermarkRenderer base, String text, int orientation) {
+        this.settings = base.settings;
+        this.mode = base.mode;
+        this.font = base.font;
+        this.textColor = base.textColor;
+        this.watermarkImage = base.watermarkImage;
+        this.textResolver = null;
+        this.text = text;
+        this.orientation = orientation;
+        TextMaskCache.Layout layout = TEXT_CACHE.layout(text != null ? text : "", font);
+        this.textWidth = layout.width();
+        this.textHeight = layout.height();
+        this.watermarkLuminance = base.watermarkLuminance;
+    }
+
+    /**
+     * The renderer for one source file: this one, unless the text has per-image tokens or the
+     * file is stored in another orientation than it is shown.
+     */
+    WatermarkRenderer forFile(File file) {
+        Map<String, String> exif = Map.of();
+        if (file != null) {
+            try {
+                exif = ExifReader.read(file);
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not read the EXIF of " + file.getName(), e);
+            }
+        }
+        return forFile(file, exif);
+    }
+
+    /**
+     * Like {@link #forFile(File)} with the EXIF tags already read, e.g. from an upload that only
+     * exists in memory. {@code file} only supplies the name and folder for text tokens.
+     */
+    WatermarkRenderer forFile(File file, Map<String, String> exif) {
+        int fileOrientation = ExifReader.orientation(exif);
+        if (textResolver == null && fileOrientation == orientation) return this;
+        return new WatermarkRenderer(this, textResolver != null ? textResolver.resolve(file, exif) : text, fileOrientation);
+    }
+
+    /** The EXIF orientation of the images this renderer is for; see {@link ImageOrientation}. */
+    int getOrientation() {
+        return orientation;
+    }
+
+    /** The text this renderer draws, after resolving any per-image tokens. */
+    String getText() {
+        return text;
+    }
+
+    WatermarkSettings getSettings() {
+        return settings;
+    }
+
+    Font getFont() {
+        return font;
+    }
+
+    /**
+     * Returns a watermarked copy of the given image. The copy is RGB for opaque sources and
+     * ARGB for sources with other pixel layouts, so transparency survives a PNG export.
+     */
+    BufferedImage render(BufferedImage originalImage) {
+        BufferedImage watermarkedImage = new BufferedImage(originalImage.getWidth(), originalImage.getHeight(), outputType(originalImage));
+        Graphics2D g2d = watermarkedImage.createGraphics();
+        g2d.drawImage(originalImage, 0, 0, null);
+        drawOriented(g2d, watermarkedImage, placementFor(originalImage));
+        return watermarkedImage;
+    }
+
+    /**
+     * Same result as {@link #render(BufferedImage)} without the fresh copy: when the source
+     * already has the output pixel layout the watermark is drawn straight into it, otherwise
+     * the source is copied into a raster taken from {@code pool}. The returned image is either
+     * {@code originalImage} itself or a pooled raster the caller has to release.
+     */
+    BufferedImage render(BufferedImage originalImage, RasterPool pool) {
+        // Sampled before drawing, since the watermark may go straight into originalImage
+        LuminanceIndex.Placement placement = placementFor(originalImage);
+        int type = outputType(originalImage);
+        BufferedImage watermarkedImage = originalImage;
+        Graphics2D g2d;
+        if (type == originalImage.getType()) {
+            g2d = originalImage.createGraphics();
+        } else {
+            watermarkedImage = pool.acquire(originalImage.getWidth(), originalImage.getHeight(), type);
+            g2d = watermarkedImage.createGraphics();
+            // Pooled rasters still hold the previous image, so replace rather than blend
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.drawImage(originalImage, 0, 0, null);
+            g2d.setComposite(AlphaComposite.SrcOver);
+        }
+        drawOriented(g2d, watermarkedImage, placement);
+        return watermarkedImage;
+    }
+
+    /** Draws the watermark in display coordinates into the stored pixels of {@code image} and disposes {@code g2d}. */
+    private void drawOriented(Graphics2D g2d, BufferedImage image, LuminanceIndex.Placement placement) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.transform(ImageOrientation.displayToStored(orientation, image.getWidth(), image.getHeight()));
+        draw(g2d, ImageOrientation.displayWidth(orientation, image.getWidth(), image.getHeight()),
+                ImageOrientation.displayHeight(orientation, image.getWidth(), image.getHeight()), placement);
+        g2d.dispose();
+    }
+
+    /** Whether the position or color depends on the image, so callers need a {@link LuminanceIndex}. */
+    boolean isAutomatic() {
+        return (settings.autoPlacement || settings.autoColor) && !mode.equals("TILED");
+    }
+
+    /** Like {@link #placementFor(LuminanceIndex)} for a decoded image in this renderer's orientation. */
+    LuminanceIndex.Placement placementFor(BufferedImage image) {
+        if (!isAutomatic()) return null;
+        return placementFor(LuminanceIndex.sample(image, orientation,
+                ImageOrientation.displayWidth(orientation, image.getWidth(), image.getHeight()),
+                ImageOrientation.displayHeight(orientation, image.getWidth(), image.getHeight())));
+    }
+
+    /**
+     * Chooses the position and text color for an image described by {@code index}, or returns
+     * {@code null} when the settings ask for neither.
+     */
+    LuminanceIndex.Placement placementFor(LuminanceIndex index) {
+        if (!isAutomatic()) return null;
+        int itemWidth = textWidth;
+        int itemHeight = textHeight;
+        double itemLuminance = settings.autoColor ? Double.NaN : LuminanceIndex.luminance(textColor.getRGB());
+        if (mode.equals("IMAGE")) {
+            if (watermarkImage == null) return null;
+            itemWidth = (int) (watermarkImage.getWidth() * settings.imageScale);
+            itemHeight = (int) (watermarkImage.getHeight() * settings.imageScale);
+            itemLuminance = watermarkLuminance;
+        }
+        return settings.autoPlacement
+                ? index.bestPlacement(itemWidth, itemHeight, itemLuminance)
+                : index.evaluate(settings.x, settings.y, itemWidth, itemHeight, itemLuminance);
+    }
+
+    /** RGB for opaque layouts that can be drawn on directly, ARGB for everything else. */
+    private static int outputType(BufferedImage originalImage) {
+        return switch (originalImage.getType()) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                 BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY -> originalImage.getType();
+            case BufferedImage.TYPE_CUSTOM -> BufferedImage.TYPE_INT_RGB;
+            default -> BufferedImage.TYPE_INT_ARGB;
+        };
+    }
+
+    /**
+     * Draws the watermark onto an image of the given size that is already painted into {@code g2d}.
+     *
+     * @param placement automatic position and color from {@link #placementFor(LuminanceIndex)}, or
+     *                  {@code null} to use the position and color from the settings
+     */
+    void draw(Graphics2D g2d, int width, int height, LuminanceIndex.Placement placement) {
+        int x = placement != null && settings.autoPlacement ? placement.x() : settings.x;
+        int y = placement != null && settings.autoPlacement ? placement.y() : settings.y;
+        switch (mode) {
+            case "TEXT" -> drawText(g2d, x, y, colorFor(placement));
+            case "TILED" -> TILED_RENDERER.render(g2d, width, height, text, font, textColor,
+                    settings.rotation, (int) settings.tileSpacing, settings.tileStagger);
+            case "IMAGE" -> drawImage(g2d, x, y);
+            default -> { }
+        }
+    }
+
+    /**
+     * The part of a {@code width} x {@code height} image that {@link #draw} changes when drawing
+     * in image pixels, or {@code null} when the watermark may cover the whole image.
+     */
+    Rectangle bounds(int width, int height, LuminanceIndex.Placement placement) {
+        int x = placement != null && settings.autoPlacement ? placement.x() : settings.x;
+        int y = placement != null && settings.autoPlacement ? placement.y() : settings.y;
+        Rectangle bounds;
+        switch (mode) {
+            case "TEXT" -> {
+                if (text == null || text.isEmpty()) return new Rectangle();
+                TextMaskCache.Mask mask = TEXT_CACHE.mask(text, font, colorFor(placement), settings.rotation);
+                bounds = new Rectangle(x + mask.dx(), y + mask.dy(), mask.image().getWidth(), mask.image().getHeight());
+            }
+            case "IMAGE" -> {
+                if (watermarkImage == null) return new Rectangle();
+                int w = (int) (watermarkImage.getWidth() * settings.imageScale);
+                int h = (int) (watermarkImage.getHeight() * settings.imageScale);
+                bounds = AffineTransform.getRotateInstance(Math.toRadians(settings.rotation), x + w / 2.0, y + h / 2.0)
+                        .createTransformedShape(new Rectangle(x, y, w, h)).getBounds();
+                bounds.grow(1, 1); // bilinear filtering bleeds into the neighbouring pixels
+            }
+            default -> {
+                return null;
+            }
+        }
+        return bounds.intersection(new Rectangle(width, height));
+    }
+
+    private Color colorFor(LuminanceIndex.Placement placement) {
+        if (placement == null || !settings.autoColor) return textColor;
+        int value = placement.darkText() ? 0 : 255;
+        return new Color(value, value, value, textColor.getAlpha());
+    }
+
+    private void drawText(Graphics2D g2d, int x, int y, Color color) {
+        if (text == null || text.isEmpty()) return;
+
+        AffineTransform transform = g2d.getTransform();
+        int pixelExact = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_FLIP;
+        if ((transform.getType() & ~pixelExact) == 0
+                && transform.getTranslateX() == Math.rint(transform.getTranslateX())
+                && transform.getTranslateY() == Math.rint(transform.getTranslateY())) {
+            // Drawing onto image pixels, possibly turned for the EXIF orientation: blit the shared
+            // pre-rasterized text, which quarter turns and mirrors move without resampling
+            TextMaskCache.Mask mask = TEXT_CACHE.mask(text, font, color, settings.rotation);
+            g2d.drawImage(mask.image(), x + mask.dx(), y + mask.dy(), null);
+            return;
+        }
+
+        // Scaled views such as the zoomed preview draw the outlines for full sharpness
+        g2d.setColor(color);
+        g2d.setFont(font);
+
+        FontMetrics fm = g2d.getFontMetrics();
+        int textWidth = fm.stringWidth(text);
+
+        AffineTransform originalTransform = g2d.getTransform();
+        g2d.rotate(Math.toRadians(settings.rotation), x + textWidth / 2.0, y);
+        g2d.drawString(text, x, y + fm.getAscent());
+        g2d.setTransform(originalTransform);
+    }
+
+    private void drawImage(Graphics2D g2d, int x, int y) {
+        if (watermarkImage == null) return;
+        int width = (int) (watermarkImage.getWidth() * settings.imageScale);
+        int height = (int) (watermarkImage.getHeight() * settings.imageScale);
+
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) settings.imageOpacity));
+
+        AffineTransform originalTransform = g2d.getTransform();
+        g2d.rotate(Math.toRadians(settings.rotation), x + width / 2.0, y + height / 2.0);
+        g2d.drawImage(watermarkImage, x, y, width, height, null);
+        g2d.setTransform(originalTransform);
+    }
+
+    /**
+     * Parses the {@code 0xRRGGBBAA} form written by JavaFX {@code Color.toString()} as well as
+     * plain {@code #RRGGBB}, without pulling the JavaFX toolkit into headless code paths.
+     */
+    static Color parseColor(String value) {
+        if (value == null || value.isBlank()) return Color.WHITE;
+        String hex = value.trim();
+        if (hex.startsWith("0x") || hex.startsWith("0X")) hex = hex.substring(2);
+        else if (hex.startsWith("#")) hex = hex.substring(1);
+        try {
+            if (hex.length() == 8) {
+                long rgba = Long.parseLong(hex, 16);
+                return new Color((int) (rgba >> 24) & 0xFF, (int) (rgba >> 16) & 0xFF, (int) (rgba >> 8) & 0xFF, (int) rgba & 0xFF);
+            }
+            if (hex.length() == 6) {
+                return new Color(Integer.parseInt(hex, 16));
+            }
+        } catch (NumberFormatException ignored) {
+            // fall through to the default below
+        }
+        return Color.WHITE;
+    }
+}
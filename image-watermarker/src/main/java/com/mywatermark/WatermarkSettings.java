@@ -0,0 +1,33 @@
+package com.mywatermark;
+
+/**
+ * Serializable snapshot of everything needed to render a watermark.
+ * <p>
+ * Stored as JSON in {@code ~/.photo-watermark-templates} and shipped to export workers, so the
+ * render path never has to look at UI controls.
+ */
+public class WatermarkSettings {
+    /** May contain per-image tokens such as {@code {basename}}; see {@link TextResolver}. */
+    public String text;
+    /** Optional CSV or JSON file with per-image fields for the text tokens. */
+    public String textMappingPath;
+    public String color;
+    public double opacity;
+    public String imageWatermarkPath;
+    public double imageOpacity;
+    public double imageScale;
+    public int x;
+    public int y;
+    public double rotation;
+    public String mode;
+    public double tileSpacing = 80;
+    public double tileStagger = 0.5;
+    public String fontFamily = "Arial";
+    public int fontSize = 48;
+    public boolean bold;
+    public boolean italic;
+    /** Pick the least busy, highest-contrast of the nine layout positions per image instead of x/y. */
+    public boolean autoPlacement;
+    /** Draw text in black or white, whichever reads better on the background at its position. */
+    public boolean autoColor;
+}
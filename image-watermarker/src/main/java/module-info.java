@@ -5,7 +5,8 @@ module com.mywatermark {
     requires java.desktop;
     requires com.google.gson;
     requires java.logging;
+    requires jdk.httpserver;
 
-    opens com.mywatermark to javafx.fxml;
+    opens com.mywatermark to javafx.fxml, com.google.gson;
     exports com.mywatermark;
 }
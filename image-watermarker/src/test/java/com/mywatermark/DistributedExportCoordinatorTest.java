@@ -0,0 +1,277 @@
+package com.mywatermark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link DistributedExportCoordinator} against in-process workers that speak its line
+ * protocol, so each test decides exactly when a worker asks for work, answers or goes silent.
+ * No worker JVMs are started and no images are rendered.
+ */
+class DistributedExportCoordinatorTest {
+
+    private static final String TOKEN = "test-token";
+
+    @TempDir
+    File outputDir;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<FakeWorker> workers = new ArrayList<>();
+    private int port;
+
+    @BeforeEach
+    void listenOnFreePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        System.setProperty(DistributedExportCoordinator.PORT_PROPERTY, String.valueOf(port));
+        System.setProperty(DistributedExportCoordinator.TOKEN_PROPERTY, TOKEN);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        workers.forEach(FakeWorker::close);
+        executor.shutdownNow();
+        System.clearProperty(DistributedExportCoordinator.PORT_PROPERTY);
+        System.clearProperty(DistributedExportCoordinator.TOKEN_PROPERTY);
+        System.clearProperty(DistributedExportCoordinator.BIND_PROPERTY);
+    }
+
+    @Test
+    void idleWorkerStealsFromTheTailOfABusyWorker() throws Exception {
+        Future<DistributedExportCoordinator.Report> run = start(files(6), DistributedExportCoordinator.HEARTBEAT_TIMEOUT_MS);
+
+        // With no local workers expected, the first worker to join is given the whole batch
+        FakeWorker busy = connect("busy");
+        assertEquals("TASK\t0", busy.next());
+        FakeWorker idle = connect("idle");
+        List<String> stolen = new ArrayList<>();
+        String task;
+        while ((task = idle.next()).startsWith("TASK")) {
+            stolen.add(task);
+            idle.finish(task);
+        }
+        assertEquals(List.of("TASK\t5", "TASK\t4", "TASK\t3", "TASK\t2", "TASK\t1"), stolen);
+        assertEquals("WAIT", task);
+        busy.finish("TASK\t0");
+
+        DistributedExportCoordinator.Report report = run.get(10, TimeUnit.SECONDS);
+        assertEquals(6, report.succeeded);
+        assertEquals(0, report.reassigned);
+        assertEquals(1, report.workers.get("busy").tasks);
+        assertEquals(5, report.workers.get("idle").tasks);
+        assertEquals(5, report.workers.get("idle").stolen);
+    }
+
+    @Test
+    void silentWorkerLosesItsTasksAfterTheHeartbeatTimeout() throws Exception {
+        Future<DistributedExportCoordinator.Report> run = start(files(3), 500);
+
+        FakeWorker silent = connect("silent");
+        assertEquals("TASK\t0", silent.next());
+        FakeWorker live = connect("live");
+        List<String> done = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 10_000;
+        String line;
+        while (!isEnd(line = live.next()) && System.currentTimeMillis() < deadline) {
+            if (line.equals("WAIT")) {
+                Thread.sleep(50); // asking again counts as a heartbeat
+            } else {
+                done.add(line);
+                live.finish(line);
+            }
+        }
+        // Stolen from the tail first, then the file the silent worker was holding
+        assertEquals(List.of("TASK\t2", "TASK\t1", "TASK\t0"), done);
+
+        DistributedExportCoordinator.Report report = run.get(10, TimeUnit.SECONDS);
+        assertEquals(3, report.succeeded);
+        assertEquals(1, report.reassigned);
+        assertTrue(report.workers.get("silent").lost);
+        assertEquals(0, report.workers.get("silent").tasks);
+        assertEquals(3, report.workers.get("live").tasks);
+    }
+
+    @Test
+    void onlyTheFirstResultForATaskCounts() throws Exception {
+        Future<DistributedExportCoordinator.Report> run = start(files(2), DistributedExportCoordinator.HEARTBEAT_TIMEOUT_MS);
+
+        FakeWorker worker = connect("worker");
+        assertEquals("TASK\t0", worker.next());
+        worker.finish("TASK\t0");
+        worker.finish("TASK\t0");
+        worker.finish("TASK\t1"); // never handed out to this worker
+        assertEquals("TASK\t1", worker.next());
+        worker.finish("TASK\t1");
+
+        DistributedExportCoordinator.Report report = run.get(10, TimeUnit.SECONDS);
+        assertEquals(2, report.succeeded);
+        assertEquals(2, report.workers.get("worker").tasks);
+    }
+
+    @Test
+    void fileThatRanOutOfMemoryGoesToAnotherWorker() throws Exception {
+        Future<DistributedExportCoordinator.Report> run = start(files(1), DistributedExportCoordinator.HEARTBEAT_TIMEOUT_MS);
+
+        FakeWorker small = connect("small");
+        FakeWorker large = connect("large");
+        assertEquals("TASK\t0", small.next());
+        small.outOfMemory("TASK\t0");
+        assertEquals("WAIT", small.next());
+        assertEquals("TASK\t0", large.next());
+        large.finish("TASK\t0");
+
+        DistributedExportCoordinator.Report report = run.get(10, TimeUnit.SECONDS);
+        assertEquals(1, report.succeeded);
+        assertEquals(1, report.reassigned);
+        assertEquals(0, report.workers.get("small").tasks);
+        assertEquals(1, report.workers.get("large").tasks);
+    }
+
+    @Test
+    void fileFailsOnceEveryAttemptRanOutOfMemory() throws Exception {
+        Future<DistributedExportCoordinator.Report> run = start(files(1), DistributedExportCoordinator.HEARTBEAT_TIMEOUT_MS);
+
+        // With no other worker left to try, the same one gets the file again
+        FakeWorker worker = connect("worker");
+        for (int attempt = 0; attempt < DistributedExportCoordinator.MAX_ATTEMPTS; attempt++) {
+            assertEquals("TASK\t0", worker.next());
+            worker.outOfMemory("TASK\t0");
+        }
+
+        DistributedExportCoordinator.Report report = run.get(10, TimeUnit.SECONDS);
+        assertEquals(0, report.succeeded);
+        assertEquals(1, report.failed);
+        assertEquals(DistributedExportCoordinator.MAX_ATTEMPTS - 1, report.reassigned);
+    }
+
+    @Test
+    void workerWithAWrongTokenIsTurnedAway() throws Exception {
+        Future<DistributedExportCoordinator.Report> run = start(files(1), DistributedExportCoordinator.HEARTBEAT_TIMEOUT_MS);
+
+        FakeWorker intruder = connect("intruder", "guess");
+        assertNull(intruder.in.readLine(), "connection should be closed without a CONFIG");
+        FakeWorker worker = connect("worker");
+        worker.finish(worker.next());
+
+        DistributedExportCoordinator.Report report = run.get(10, TimeUnit.SECONDS);
+        assertEquals(1, report.succeeded);
+        assertEquals(List.of("worker"), List.copyOf(report.workers.keySet()));
+    }
+
+    @Test
+    void refusesToListenBeyondLoopbackWithoutAToken() {
+        System.clearProperty(DistributedExportCoordinator.TOKEN_PROPERTY);
+        System.setProperty(DistributedExportCoordinator.BIND_PROPERTY, "0.0.0.0");
+        DistributedExportCoordinator coordinator = new DistributedExportCoordinator(files(1), outputDir,
+                new WatermarkSettings(), new ExportOptions(), 0);
+        assertThrows(IOException.class, () -> coordinator.run(new ExportProgress(1)));
+    }
+
+    /** The coordinator says BYE, or closes the connection once the last file is done. */
+    private static boolean isEnd(String line) {
+        return line == null || line.equals("BYE");
+    }
+
+    private List<File> files(int count) {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(new File(outputDir, "image-" + i + ".png"));
+        }
+        return files;
+    }
+
+    private Future<DistributedExportCoordinator.Report> start(List<File> files, long heartbeatTimeoutMs) {
+        DistributedExportCoordinator coordinator = new DistributedExportCoordinator(files, outputDir,
+                new WatermarkSettings(), new ExportOptions(), 0, heartbeatTimeoutMs);
+        return executor.submit(() -> coordinator.run(new ExportProgress(files.size())));
+    }
+
+    private FakeWorker connect(String id) throws Exception {
+        FakeWorker worker = connect(id, TOKEN);
+        String config = worker.in.readLine();
+        assertTrue(config != null && config.startsWith("CONFIG\t"), "expected CONFIG but got " + config);
+        return worker;
+    }
+
+    private FakeWorker connect(String id, String token) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try {
+                FakeWorker worker = new FakeWorker(new Socket("127.0.0.1", port));
+                workers.add(worker);
+                worker.send("HELLO\t" + id + "\t" + token);
+                return worker;
+            } catch (ConnectException e) {
+                // the coordinator is not listening yet
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static final class FakeWorker {
+        final Socket socket;
+        final BufferedReader in;
+        final BufferedWriter out;
+
+        FakeWorker(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String message) throws IOException {
+            out.write(message);
+            out.write('\n');
+            out.flush();
+        }
+
+        /** Asks for work and returns the reply, with the file path left off a TASK. */
+        String next() throws IOException {
+            send("NEXT");
+            String reply = in.readLine();
+            return reply != null && reply.startsWith("TASK\t") ? reply.substring(0, reply.lastIndexOf('\t')) : reply;
+        }
+
+        void finish(String task) throws IOException {
+            send("RESULT\t" + task.substring(5) + "\tOK\t100\t1\t");
+        }
+
+        void outOfMemory(String task) throws IOException {
+            send("RESULT\t" + task.substring(5) + "\tRETRY\t0\t1\tOut of memory");
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.mywatermark;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Writes EXIF through {@link ImageExporter} and reads it back with {@link ExifReader}, and feeds
+ * the reader hand-built TIFF blocks in both byte orders and headers cut off or corrupted at
+ * the places a damaged file tends to break.
+ */
+class ExifReaderTest {
+
+    private static final String ARTIST = "A. Photographer";
+    private static final String TAKEN = "2024:05:01 10:20:30";
+
+    @Test
+    void jpegKeepsTheOrientationInAnApp1Segment() throws IOException {
+        for (int orientation = 2; orientation <= 8; orientation++) {
+            byte[] jpeg = encode("JPEG", orientation);
+            assertEquals(Map.of("Orientation", String.valueOf(orientation)), read(jpeg), "orientation " + orientation);
+            assertDecodes(jpeg);
+        }
+    }
+
+    @Test
+    void pngKeepsTheOrientationInAnExifChunk() throws IOException {
+        for (int orientation = 2; orientation <= 8; orientation++) {
+            byte[] png = encode("PNG", orientation);
+            assertEquals(Map.of("Orientation", String.valueOf(orientation)), read(png), "orientation " + orientation);
+            assertDecodes(png);
+        }
+    }
+
+    @Test
+    void uprightImagesAreWrittenWithoutExif() throws IOException {
+        assertEquals(Map.of(), read(encode("JPEG", ImageOrientation.NORMAL)));
+        assertEquals(Map.of(), read(encode("PNG", ImageOrientation.NORMAL)));
+    }
+
+    @Test
+    void readsBothByteOrders() throws IOException {
+        Map<String, String> expected = Map.of("Orientation", "6", "Artist", ARTIST, "DateTimeOriginal", TAKEN);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            assertEquals(expected, read(jpegWithExif(tiff(order))), order.toString());
+            assertEquals(expected, read(pngWithExif(tiff(order))), order.toString());
+        }
+    }
+
+    @Test
+    void truncatedOrMalformedHeadersYieldNoTags() throws IOException {
+        byte[] jpeg = jpegWithExif(tiff(ByteOrder.BIG_ENDIAN));
+        byte[] png = pngWithExif(tiff(ByteOrder.BIG_ENDIAN));
+        byte[] ifdOutOfRange = tiff(ByteOrder.BIG_ENDIAN);
+        ByteBuffer.wrap(ifdOutOfRange).putInt(4, 1 << 20);
+        byte[] bogusPngLength = png.clone();
+        ByteBuffer.wrap(bogusPngLength).putInt(33, Integer.MAX_VALUE);
+
+        byte[][] broken = {
+                {},
+                "not an image".getBytes(StandardCharsets.US_ASCII),
+                Arrays.copyOf(jpeg, 2),                // signature only
+                Arrays.copyOf(jpeg, 16),               // inside the APP1 segment
+                Arrays.copyOf(png, 50),                // inside the eXIf chunk
+                bogusPngLength,                        // chunk claims 2 GB
+                jpegWithExif(ifdOutOfRange),           // IFD0 offset past the block
+                jpegWithExif(new byte[]{'M', 'M'}),    // TIFF header cut short
+        };
+        for (int i = 0; i < broken.length; i++) {
+            assertEquals(Map.of(), read(broken[i]), "case " + i);
+        }
+    }
+
+    @Test
+    void keepsTheTagsReadBeforeABadOffset() throws IOException {
+        byte[] tiff = tiff(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer buffer = ByteBuffer.wrap(tiff).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(8 + 2 + 12 + 8, 1 << 20);      // Artist text past the end is skipped
+        buffer.putInt(8 + 2 + 2 * 12 + 8, 1 << 20);  // Exif sub-IFD past the end stops the walk
+        assertEquals(Map.of("Orientation", "6"), read(jpegWithExif(tiff)));
+    }
+
+    @Test
+    void orientationFallsBackToUpright() {
+        assertEquals(1, ExifReader.orientation(Map.of()));
+        assertEquals(1, ExifReader.orientation(Map.of("Orientation", "0")));
+        assertEquals(1, ExifReader.orientation(Map.of("Orientation", "9")));
+        assertEquals(1, ExifReader.orientation(Map.of("Orientation", "left")));
+        assertEquals(8, ExifReader.orientation(Map.of("Orientation", "8")));
+    }
+
+    private static Map<String, String> read(byte[] file) throws IOException {
+        return ExifReader.read(new ByteArrayInputStream(file));
+    }
+
+    private static byte[] encode(String format, int orientation) throws IOException {
+        ExportOptions options = new ExportOptions();
+        options.format = format;
+        BufferedImage image = new BufferedImage(6, 4, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayImageOutputStream out = new ByteArrayImageOutputStream();
+        ImageExporter.write(image, out, options, null, orientation);
+        return out.toByteArray();
+    }
+
+    private static void assertDecodes(byte[] file) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(file));
+        assertNotNull(image, "the EXIF must not keep ImageIO from reading the file");
+        assertEquals(6, image.getWidth());
+        assertEquals(4, image.getHeight());
+    }
+
+    /**
+     * IFD0 with Orientation 6, an Artist too long to fit its entry and a pointer to an Exif
+     * sub-IFD holding DateTimeOriginal.
+     */
+    private static byte[] tiff(ByteOrder order) {
+        byte[] artist = (ARTIST + '\0').getBytes(StandardCharsets.US_ASCII);
+        byte[] taken = (TAKEN + '\0').getBytes(StandardCharsets.US_ASCII);
+        int ifd0 = 8;
+        int artistAt = ifd0 + 2 + 3 * 12 + 4;
+        int exifIfd = artistAt + artist.length;
+        int takenAt = exifIfd + 2 + 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(takenAt + taken.length).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.putShort((short) 42).putInt(ifd0);
+        tiff.putShort((short) 3);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+        tiff.putShort((short) 0x013B).putShort((short) 2).putInt(artist.length).putInt(artistAt);
+        tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+        tiff.putInt(0);
+        tiff.put(artist);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x9003).putShort((short) 2).putInt(taken.length).putInt(takenAt);
+        tiff.putInt(0);
+        tiff.put(taken);
+        return tiff.array();
+    }
+
+    /** SOI, an APP1 segment with {@code tiff}, then start of scan. */
+    private static byte[] jpegWithExif(byte[] tiff) {
+        ByteBuffer jpeg = ByteBuffer.allocate(2 + 4 + 6 + tiff.length + 2);
+        jpeg.putShort((short) 0xFFD8);
+        jpeg.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.length));
+        jpeg.put("Exif\0\0".getBytes(StandardCharsets.ISO_8859_1)).put(tiff);
+        jpeg.putShort((short) 0xFFDA);
+        return jpeg.array();
+    }
+
+    /** Signature, IHDR, an {@code eXIf} chunk with {@code tiff}, then IEND. CRCs are not checked. */
+    private static byte[] pngWithExif(byte[] tiff) {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        png.writeBytes(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        png.writeBytes(chunk("IHDR", new byte[13]));
+        png.writeBytes(chunk("eXIf", tiff));
+        png.writeBytes(chunk("IEND", new byte[0]));
+        return png.toByteArray();
+    }
+
+    private static byte[] chunk(String type, byte[] data) {
+        return ByteBuffer.allocate(12 + data.length)
+                .putInt(data.length)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(data)
+                .putInt(0)
+                .array();
+    }
+}
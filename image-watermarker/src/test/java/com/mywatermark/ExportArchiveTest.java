@@ -0,0 +1,204 @@
+package com.mywatermark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes archives through {@link ExportArchive} and reads them back: ZIP with
+ * {@link ZipInputStream}, TAR with a small header parser that also checks what the ustar format
+ * requires of every record.
+ */
+class ExportArchiveTest {
+
+    @TempDir
+    File outputDir;
+
+    @Test
+    void folderSinkHasNoArchive() throws IOException {
+        assertNull(ExportArchive.open(ExportArchive.FOLDER, outputDir));
+        assertNull(ExportArchive.open(null, outputDir));
+        assertThrows(IOException.class, () -> ExportArchive.open("RAR", outputDir));
+    }
+
+    @Test
+    void zipEntriesFollowInputOrder() throws Exception {
+        ExportArchive archive = ExportArchive.open(ExportArchive.ZIP, outputDir);
+        putOutOfOrder(archive);
+        assertInputOrder(readZip(archive.getFile()));
+    }
+
+    @Test
+    void tarEntriesFollowInputOrder() throws Exception {
+        ExportArchive archive = ExportArchive.open(ExportArchive.TAR, outputDir);
+        putOutOfOrder(archive);
+        assertInputOrder(readTar(archive.getFile()));
+    }
+
+    @Test
+    void entriesWaitingForASkippedIndexAreWrittenOnceItIsSkipped() throws Exception {
+        ExportArchive archive = ExportArchive.open(ExportArchive.ZIP, outputDir);
+        archive.put(1, "b.png", data(1));
+        archive.put(2, "c.png", data(2));
+        assertEquals(0, archive.getEntryCount());
+        archive.skip(0);
+        assertEquals(2, archive.getEntryCount());
+        archive.skip(1); // already handed over
+        archive.close();
+        assertEquals(List.of("b.png", "c.png"), List.copyOf(readZip(archive.getFile()).keySet()));
+    }
+
+    @Test
+    void duplicateNamesGetACounter() throws Exception {
+        ExportArchive archive = ExportArchive.open(ExportArchive.ZIP, outputDir);
+        String[] names = {"a.jpg", "a.jpg", "README", "a.jpg", "README", "a (2).jpg"};
+        for (int i = 0; i < names.length; i++) {
+            archive.put(i, names[i], data(i));
+        }
+        archive.close();
+        assertEquals(List.of("a.jpg", "a (2).jpg", "README", "a (3).jpg", "README (2)", "a (2) (2).jpg"),
+                List.copyOf(readZip(archive.getFile()).keySet()));
+    }
+
+    @Test
+    void longTarNamesGetAPaxRecord() throws Exception {
+        // 101 bytes, and the lengths where the record's length prefix gains a digit
+        String[] names = {
+                "n".repeat(97) + ".png",
+                "n".repeat(986) + ".png",
+                "n".repeat(987) + ".png",
+                "n".repeat(988) + ".png",
+                "x" + "é".repeat(60) + ".jpg",   // truncated header name must not split a character
+        };
+        ExportArchive archive = ExportArchive.open(ExportArchive.TAR, outputDir);
+        for (int i = 0; i < names.length; i++) {
+            archive.put(i, names[i], data(i));
+        }
+        archive.close();
+
+        Map<String, byte[]> entries = readTar(archive.getFile());
+        assertEquals(List.of(names), List.copyOf(entries.keySet()));
+        for (int i = 0; i < names.length; i++) {
+            assertArrayEquals(data(i), entries.get(names[i]));
+        }
+    }
+
+    private static void putOutOfOrder(ExportArchive archive) throws Exception {
+        archive.put(3, "d.png", data(3));
+        archive.skip(2);
+        archive.put(1, "b.png", data(1));
+        archive.put(4, "e.png", data(4));
+        archive.put(0, "a.png", data(0));
+        assertEquals(4, archive.getEntryCount());
+        archive.close();
+    }
+
+    /** Index 2 was skipped; every other entry comes in input order with its own data. */
+    private static void assertInputOrder(Map<String, byte[]> entries) {
+        assertEquals(List.of("a.png", "b.png", "d.png", "e.png"), List.copyOf(entries.keySet()));
+        assertArrayEquals(data(0), entries.get("a.png"));
+        assertArrayEquals(data(1), entries.get("b.png"));
+        assertArrayEquals(data(3), entries.get("d.png"));
+        assertArrayEquals(data(4), entries.get("e.png"));
+    }
+
+    /** Sizes around the 512-byte tar block, so padding is needed, exact and absent. */
+    private static byte[] data(int index) {
+        int[] sizes = {1, 511, 512, 513, 0, 1500};
+        byte[] data = new byte[sizes[index % sizes.length]];
+        Arrays.fill(data, (byte) ('A' + index));
+        return data;
+    }
+
+    private static Map<String, byte[]> readZip(File file) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new FileInputStream(file))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                assertEquals(ZipEntry.STORED, entry.getMethod(), entry.getName());
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads every file record, checking the magic, the header checksum and the padding, and
+     * applies a PAX {@code path} to the record that follows it.
+     */
+    private static Map<String, byte[]> readTar(File file) throws IOException {
+        byte[] tar = Files.readAllBytes(file.toPath());
+        assertEquals(0, tar.length % 512, "archive length");
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        String paxPath = null;
+        int offset = 0;
+        while (true) {
+            byte[] header = Arrays.copyOfRange(tar, offset, offset + 512);
+            if (Arrays.equals(header, new byte[512])) break;
+            assertEquals("ustar\u000000", new String(header, 257, 8, StandardCharsets.US_ASCII));
+            long stored = octal(header, 148, 8);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            long sum = 0;
+            for (byte b : header) sum += b & 0xFF;
+            assertEquals(sum, stored, "checksum at " + offset);
+
+            int size = (int) octal(header, 124, 12);
+            byte[] data = Arrays.copyOfRange(tar, offset + 512, offset + 512 + size);
+            int padded = (size + 511) / 512 * 512;
+            assertArrayEquals(new byte[padded - size], Arrays.copyOfRange(tar, offset + 512 + size, offset + 512 + padded));
+            offset += 512 + padded;
+
+            String name = new String(header, 0, length(header, 0, 100), StandardCharsets.UTF_8);
+            if (header[156] == 'x') {
+                paxPath = paxPath(data);
+            } else {
+                assertEquals('0', header[156]);
+                if (paxPath != null) {
+                    assertTrue(paxPath.startsWith(name), "header name must be a prefix of the path: " + name);
+                    assertTrue(name.getBytes(StandardCharsets.UTF_8).length <= 100);
+                    name = paxPath;
+                    paxPath = null;
+                }
+                entries.put(name, data);
+            }
+        }
+        assertArrayEquals(new byte[1024], Arrays.copyOfRange(tar, offset, tar.length), "end-of-archive blocks");
+        return entries;
+    }
+
+    /** The path of a single {@code "<length> path=<name>\n"} record, whose length counts itself. */
+    private static String paxPath(byte[] data) {
+        String record = new String(data, StandardCharsets.UTF_8);
+        int space = record.indexOf(' ');
+        assertEquals(data.length, Integer.parseInt(record.substring(0, space)), "PAX record length");
+        assertTrue(record.startsWith(" path=", space) && record.endsWith("\n"), record);
+        return record.substring(space + " path=".length(), record.length() - 1);
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        return Long.parseLong(new String(header, offset, length(header, offset, length), StandardCharsets.US_ASCII), 8);
+    }
+
+    private static int length(byte[] header, int offset, int max) {
+        int end = 0;
+        while (end < max && header[offset + end] != 0) end++;
+        return end;
+    }
+}
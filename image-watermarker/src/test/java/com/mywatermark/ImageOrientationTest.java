@@ -0,0 +1,86 @@
+package com.mywatermark;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks each EXIF orientation against the meaning the tag gives it: where the corners of the
+ * upright photo lie in the stored pixels, and which pixel ends up where once drawn through
+ * {@link ImageOrientation#displayToStored}.
+ */
+class ImageOrientationTest {
+
+    private static final int W = 4;
+    private static final int H = 3;
+
+    /**
+     * Per orientation, the stored positions of the upright photo's top-left, top-right and
+     * bottom-left corners, as the EXIF specification defines them.
+     */
+    private static final int[][][] CORNERS = {
+            null,
+            {{0, 0}, {W, 0}, {0, H}},   // 1: upright
+            {{W, 0}, {0, 0}, {W, H}},   // 2: mirrored
+            {{W, H}, {0, H}, {W, 0}},   // 3: upside down
+            {{0, H}, {W, H}, {0, 0}},   // 4: mirrored upside down
+            {{0, 0}, {0, H}, {W, 0}},   // 5: transposed
+            {{0, H}, {0, 0}, {W, H}},   // 6: shown turned 90° clockwise
+            {{W, H}, {W, 0}, {0, H}},   // 7: transversed
+            {{W, 0}, {W, H}, {0, 0}},   // 8: shown turned 90° counterclockwise
+    };
+
+    @Test
+    void displaySizeSwapsAxesForOrientationsFiveToEight() {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            boolean swapped = orientation >= 5;
+            assertEquals(swapped, ImageOrientation.swapsAxes(orientation), "orientation " + orientation);
+            assertEquals(swapped ? H : W, ImageOrientation.displayWidth(orientation, W, H), "orientation " + orientation);
+            assertEquals(swapped ? W : H, ImageOrientation.displayHeight(orientation, W, H), "orientation " + orientation);
+        }
+    }
+
+    @Test
+    void displayCornersLandOnTheStoredCorners() {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            int displayWidth = ImageOrientation.displayWidth(orientation, W, H);
+            int displayHeight = ImageOrientation.displayHeight(orientation, W, H);
+            AffineTransform toStored = ImageOrientation.displayToStored(orientation, W, H);
+            AffineTransform toDisplay = ImageOrientation.storedToDisplay(orientation, W, H);
+            Point2D[] display = {
+                    new Point2D.Double(0, 0), new Point2D.Double(displayWidth, 0), new Point2D.Double(0, displayHeight)};
+            for (int corner = 0; corner < display.length; corner++) {
+                String label = "orientation " + orientation + ", corner " + corner;
+                Point2D stored = toStored.transform(display[corner], null);
+                assertEquals(new Point2D.Double(CORNERS[orientation][corner][0], CORNERS[orientation][corner][1]), stored, label);
+                assertEquals(display[corner], toDisplay.transform(stored, null), label);
+            }
+        }
+    }
+
+    @Test
+    void pixelsDrawnThroughTheTransformAreNotResampled() {
+        BufferedImage upright = new BufferedImage(H, W, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < W; y++) {
+            for (int x = 0; x < H; x++) {
+                upright.setRGB(x, y, y * H + x + 1);
+            }
+        }
+        // Orientation 6 with the upright photo H wide and W tall is stored W wide and H tall
+        BufferedImage stored = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = stored.createGraphics();
+        g.drawImage(upright, ImageOrientation.displayToStored(6, W, H), null);
+        g.dispose();
+        for (int y = 0; y < W; y++) {
+            for (int x = 0; x < H; x++) {
+                // display (x, y) covers the stored pixel (y, H - 1 - x)
+                assertEquals(upright.getRGB(x, y), stored.getRGB(y, H - 1 - x), "display pixel " + x + "," + y);
+            }
+        }
+    }
+}
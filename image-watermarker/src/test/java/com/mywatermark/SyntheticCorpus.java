@@ -0,0 +1,258 @@
+package com.mywatermark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Deterministic set of test images for {@link ThroughputBenchmark}.
+ * <p>
+ * The same seed and size always give the same files, so results from different commits and
+ * machines are measured against identical input. The mix covers what a real batch contains:
+ * sizes from a web image to a 24 MP camera frame, landscape and portrait, baseline JPEG,
+ * opaque and transparent PNG and 16-bit PNG. Pixels are smooth gradients and shapes with
+ * sensor-like noise, so the codecs work about as hard as they do on photographs.
+ * <p>
+ * A {@code corpus.json} manifest records how the folder was generated; a folder whose manifest
+ * matches is reused instead of being written again. Otherwise the previous synthetic images are
+ * deleted before the new ones are written, so the folder never mixes two corpora.
+ */
+final class SyntheticCorpus {
+
+    private static final Logger logger = Logger.getLogger(SyntheticCorpus.class.getName());
+
+    /** Bumped whenever the generated images change, so stale corpus folders are regenerated. */
+    private static final int VERSION = 1;
+    static final String MANIFEST = "corpus.json";
+    private static final String FILE_PREFIX = "synthetic-";
+
+    /** Megapixels of the size classes, with how often each is picked. */
+    private static final double[] MEGAPIXELS = {0.3, 2, 6, 12, 24};
+    private static final int[] SIZE_WEIGHTS = {3, 4, 4, 2, 1};
+    private static final double[][] ASPECTS = {{4, 3}, {3, 2}, {16, 9}, {3, 4}, {2, 3}};
+
+    enum Kind {
+        JPEG("jpg", 50),
+        PNG_RGB("png", 20),
+        PNG_ALPHA("png", 15),
+        PNG_16BIT("png", 15);
+
+        final String extension;
+        final int weight;
+
+        Kind(String extension, int weight) {
+            this.extension = extension;
+            this.weight = weight;
+        }
+    }
+
+    /** One generated file. */
+    static final class Entry {
+        String name;
+        Kind kind;
+        int width;
+        int height;
+        long bytes;
+
+        long pixels() {
+            return (long) width * height;
+        }
+    }
+
+    /** Contents of {@value #MANIFEST}. */
+    static final class Manifest {
+        int version;
+        long seed;
+        int count;
+        List<Entry> entries = new ArrayList<>();
+    }
+
+    private final File directory;
+    private final Manifest manifest;
+
+    private SyntheticCorpus(File directory, Manifest manifest) {
+        this.directory = directory;
+        this.manifest = manifest;
+    }
+
+    /** Returns the corpus in {@code directory}, generating it first unless it is already there. */
+    static SyntheticCorpus open(File directory, long seed, int count) throws IOException {
+        File manifestFile = new File(directory, MANIFEST);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        if (manifestFile.isFile()) {
+            try (Reader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                Manifest existing = gson.fromJson(reader, Manifest.class);
+                if (existing != null && existing.version == VERSION && existing.seed == seed && existing.count == count
+                        && existing.entries.stream().allMatch(e -> new File(directory, e.name).length() == e.bytes)) {
+                    logger.info("Reusing synthetic corpus in " + directory);
+                    return new SyntheticCorpus(directory, existing);
+                }
+            } catch (JsonParseException e) {
+                logger.warning("Ignoring unreadable corpus manifest " + manifestFile + ": " + e.getMessage());
+            }
+        }
+
+        Files.createDirectories(directory.toPath());
+        File[] stale = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) || name.equals(MANIFEST));
+        if (stale != null) {
+            for (File file : stale) {
+                Files.delete(file.toPath());
+            }
+        }
+        Manifest manifest = new Manifest();
+        manifest.version = VERSION;
+        manifest.seed = seed;
+        manifest.count = count;
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Entry entry = new Entry();
+            entry.kind = pick(random, Kind.values());
+            double megapixels = MEGAPIXELS[pickIndex(random, SIZE_WEIGHTS)];
+            double[] aspect = ASPECTS[random.nextInt(ASPECTS.length)];
+            entry.width = (int) Math.round(Math.sqrt(megapixels * 1e6 * aspect[0] / aspect[1]));
+            entry.height = (int) Math.round(megapixels * 1e6 / entry.width);
+            entry.name = String.format(FILE_PREFIX + "%04d-%dx%d.%s", i, entry.width, entry.height, entry.kind.extension);
+            File file = new File(directory, entry.name);
+            write(entry, random.nextLong(), file);
+            entry.bytes = file.length();
+            manifest.entries.add(entry);
+        }
+        try (Writer writer = Files.newBufferedWriter(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(manifest, writer);
+        }
+        logger.info(String.format("Generated %d synthetic images in %s (%.1f s)", count, directory,
+                (System.nanoTime() - start) / 1e9));
+        return new SyntheticCorpus(directory, manifest);
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    List<Entry> getEntries() {
+        return manifest.entries;
+    }
+
+    long totalPixels() {
+        return manifest.entries.stream().mapToLong(Entry::pixels).sum();
+    }
+
+    private static Kind pick(Random random, Kind[] kinds) {
+        int[] weights = new int[kinds.length];
+        for (int i = 0; i < kinds.length; i++) weights[i] = kinds[i].weight;
+        return kinds[pickIndex(random, weights)];
+    }
+
+    private static int pickIndex(Random random, int[] weights) {
+        int total = 0;
+        for (int weight : weights) total += weight;
+        int value = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    private static void write(Entry entry, long seed, File file) throws IOException {
+        BufferedImage image = paint(entry.width, entry.height, entry.kind == Kind.PNG_ALPHA, new Random(seed));
+        if (entry.kind == Kind.PNG_16BIT) {
+            image = to16Bit(image);
+        }
+        if (!ImageIO.write(image, entry.kind == Kind.JPEG ? "jpeg" : "png", file)) {
+            throw new IOException("No image writer for " + file.getName());
+        }
+    }
+
+    /** Soft gradients and shapes, like out-of-focus photo content, with per-pixel noise over them. */
+    private static BufferedImage paint(int width, int height, boolean alpha, Random random) {
+        BufferedImage image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, randomColor(random, 255), width, height, randomColor(random, 255)));
+        g.fillRect(0, 0, width, height);
+        for (int i = 0; i < 40; i++) {
+            int size = (int) (Math.min(width, height) * (0.05 + random.nextDouble() * 0.4));
+            int x = random.nextInt(width) - size / 2;
+            int y = random.nextInt(height) - size / 2;
+            g.setPaint(new GradientPaint(x, y, randomColor(random, 160 + random.nextInt(96)),
+                    x + size, y + size, randomColor(random, random.nextInt(128))));
+            if (random.nextBoolean()) {
+                g.fillOval(x, y, size, size);
+            } else {
+                g.fillRoundRect(x, y, size, size / 2, size / 8, size / 8);
+            }
+        }
+        g.dispose();
+
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        long state = random.nextLong();
+        for (int i = 0; i < pixels.length; i++) {
+            state = state * 6364136223846793005L + 1442695040888963407L; // LCG, far faster than Random per pixel
+            int noise = (int) (state >>> 59) - 16;                        // -16..15 on every channel
+            int p = pixels[i];
+            int a = alpha ? transparency(i % width, i / width, width, height) : 0xFF;
+            pixels[i] = a << 24 | clamp((p >> 16 & 0xFF) + noise) << 16 | clamp((p >> 8 & 0xFF) + noise) << 8 | clamp((p & 0xFF) + noise);
+        }
+        return image;
+    }
+
+    /** Opaque in the middle and fading out towards the edges, like a cut-out or vignette overlay. */
+    private static int transparency(int x, int y, int width, int height) {
+        double dx = (x - width / 2.0) / (width / 2.0);
+        double dy = (y - height / 2.0) / (height / 2.0);
+        return clamp((int) (255 * (1.4 - Math.hypot(dx, dy))));
+    }
+
+    private static BufferedImage to16Bit(BufferedImage image) {
+        ComponentColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                new int[]{16, 16, 16}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        WritableRaster raster = model.createCompatibleWritableRaster(image.getWidth(), image.getHeight());
+        int[] row = new int[image.getWidth()];
+        int[] samples = new int[image.getWidth() * 3];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, row.length, 1, row, 0, row.length);
+            for (int x = 0; x < row.length; x++) {
+                int p = row[x];
+                // Spread 8-bit values over 16 bits and fill the low byte, as a real 16-bit scan would
+                samples[x * 3] = (p >> 16 & 0xFF) * 257 ^ (x * 31 & 0xFF);
+                samples[x * 3 + 1] = (p >> 8 & 0xFF) * 257 ^ (y * 17 & 0xFF);
+                samples[x * 3 + 2] = (p & 0xFF) * 257 ^ ((x + y) * 7 & 0xFF);
+            }
+            raster.setPixels(0, y, row.length, 1, samples);
+        }
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    private static Color randomColor(Random random, int alpha) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), alpha);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
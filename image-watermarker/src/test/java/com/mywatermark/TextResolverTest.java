@@ -0,0 +1,157 @@
+package com.mywatermark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Table-driven checks of {@link TextResolver}: each case is a watermark text, an optional
+ * mapping file, the image and the text expected on it. Mapping files are written to a fresh
+ * folder per case, since parsed mappings are cached by path and modification time.
+ */
+class TextResolverTest {
+
+    private record Case(String text, String mappingName, String mapping, String image, String expected) { }
+
+    private static final Map<String, String> EXIF = Map.of(
+            "Artist", "Ann Example",
+            "DateTimeOriginal", "2021:03:04 05:06:07",
+            "DateTime", "2023:01:01 00:00:00");
+
+    @TempDir
+    File dir;
+
+    private int files;
+
+    @Test
+    void csvMappings() throws IOException {
+        Case[] cases = {
+                // A BOM before a header whose key is not the first column
+                new Case("© {credit}", "bom.csv", "\uFEFFcredit,file\r\nAnn,img.jpg\r\n", "img.jpg", "© Ann"),
+                new Case("{credit}", "comma.csv", "file,credit\nimg.jpg,\"Doe, Jane\"\n", "img.jpg", "Doe, Jane"),
+                new Case("{credit}", "quotes.csv", "file,credit\nimg.jpg,\"The \"\"Best\"\" Shot\"\n", "img.jpg",
+                        "The \"Best\" Shot"),
+                new Case("{credit}", "crlf.csv", "file,credit\r\nimg.jpg,Ann\r\nother.jpg,Bob\r\n", "other.jpg", "Bob"),
+                new Case("{credit}", "cr.csv", "file,credit\rimg.jpg,Ann\rother.jpg,Bob\r", "other.jpg", "Bob"),
+                new Case("{credit}", "newline.csv", "file,credit\nimg.jpg,\"two\r\nlines\"\n", "img.jpg", "two\r\nlines"),
+                new Case("{credit}", "no-final-newline.csv", "file,credit\nimg.jpg,Ann", "img.jpg", "Ann"),
+                new Case("{credit}", "blank-lines.csv", "file,credit\n\nimg.jpg,Ann\n\n", "img.jpg", "Ann"),
+                new Case("[{credit}]", "empty-cell.csv", "file,credit\nimg.jpg,\n", "img.jpg", "[]"),
+                new Case("[{credit}]", "short-row.csv", "file,credit\nimg.jpg\n", "img.jpg", "[]"),
+                new Case("{credit}", "filename-column.csv", "credit,Filename\nAnn,img.jpg\n", "img.jpg", "Ann"),
+                new Case("{credit}", "first-column.csv", "name,credit\nimg.jpg,Ann\n", "img.jpg", "Ann"),
+                // Rows are matched ignoring case, and by the name without extension
+                new Case("{Credit}", "case.csv", "FILE,Credit\n IMG.JPG ,Ann\n", "img.jpg", "Ann"),
+                new Case("{credit}", "basename.csv", "file,credit\nimg,Ann\n", "img.png", "Ann"),
+                new Case("[{credit}]", "unlisted.csv", "file,credit\nimg.jpg,Ann\n", "other.jpg", "[]"),
+                // Mapping columns take precedence over the built-in tokens
+                new Case("{filename}", "override.csv", "file,filename\nimg.jpg,Renamed\n", "img.jpg", "Renamed"),
+                // Without tokens, the text column replaces the typed text of listed images only
+                new Case("Typed", "text.csv", "file,text\nimg.jpg,Mapped\n", "img.jpg", "Mapped"),
+                new Case("Typed", "text-unlisted.csv", "file,text\nimg.jpg,Mapped\n", "other.jpg", "Typed"),
+        };
+        check(cases);
+    }
+
+    @Test
+    void jsonMappings() throws IOException {
+        Case[] cases = {
+                new Case("Typed", "plain.json", "{\"IMG.jpg\": \"Mapped\"}", "img.jpg", "Mapped"),
+                new Case("Typed", "plain-unlisted.json", "{\"img.jpg\": \"Mapped\"}", "other.jpg", "Typed"),
+                new Case("{photographer} ISO {iso}{tags}", "fields.json",
+                        "{\"img.jpg\": {\"Photographer\": \"Ann\", \"iso\": 200, \"tags\": [1, 2]}}", "img.jpg", "Ann ISO 200"),
+                new Case("{text}!", "text-field.json", "{\"img\": {\"text\": \"Hi\"}}", "img.png", "Hi!"),
+        };
+        check(cases);
+    }
+
+    @Test
+    void tokens() throws IOException {
+        Case[] cases = {
+                new Case("© {exif:Artist}", null, null, "img.jpg", "© Ann Example"),
+                new Case("{EXIF: artist }", null, null, "img.jpg", "Ann Example"),
+                new Case("{exif:year}", null, null, "img.jpg", "2021"),
+                new Case("[{exif:LensModel}]", null, null, "img.jpg", "[]"),
+                new Case("[{exif:NoSuchTag}]", null, null, "img.jpg", "[]"),
+                new Case("[{exif:}]", null, null, "img.jpg", "[]"),
+                new Case("[{unknown}]", null, null, "img.jpg", "[]"),
+                new Case("{filename} {basename} {folder}", null, null, "img.v2.jpg", "img.v2.jpg img.v2 photos"),
+                new Case("{ filename }", null, null, ".hidden", ".hidden"),
+                new Case("{basename}", null, null, ".hidden", ".hidden"),
+                // Replacement text is literal, and braces that are not a token are kept
+                new Case("$1 \\ {filename} {} {{filename}}", null, null, "a$b\\c.jpg", "$1 \\ a$b\\c.jpg {} {a$b\\c.jpg}"),
+        };
+        check(cases);
+    }
+
+    @Test
+    void exifYearFallsBackToDateTime() throws IOException {
+        TextResolver resolver = resolver("{exif:year}", null);
+        assertEquals("2023", resolver.resolve(image("img.jpg"), Map.of("DateTime", "2023:01:01 00:00:00")));
+        assertEquals("", resolver.resolve(image("img.jpg"), Map.of("DateTime", "23")));
+        assertEquals("", resolver.resolve(image("img.jpg"), Map.of()));
+    }
+
+    @Test
+    void previewWithoutAFileBlanksTheTokens() throws IOException {
+        assertEquals("by  ()", resolver("by {exif:Artist} ({filename})", null).resolve(null, Map.of()));
+    }
+
+    @Test
+    void plainTextNeedsNoResolver() throws IOException {
+        assertNull(resolver("Plain", null));
+        assertNull(resolver(null, null));
+        // A mapping without a text column has nothing to offer text without tokens
+        assertNull(resolver("Plain", mapping("no-text.csv", "file,credit\nimg.jpg,Ann\n")));
+        assertNotNull(resolver("{credit}", mapping("credit.csv", "file,credit\nimg.jpg,Ann\n")));
+    }
+
+    @Test
+    void unreadableMappingsAreReported() throws IOException {
+        String missing = new File(dir, "missing.csv").getPath();
+        String array = mapping("array.json", "[\"img.jpg\"]");
+        String broken = mapping("broken.json", "{\"img.jpg\": ");
+        for (String path : new String[]{missing, array, broken}) {
+            assertThrows(IOException.class, () -> resolver("{credit}", path), path);
+        }
+    }
+
+    private void check(Case[] cases) throws IOException {
+        for (Case c : cases) {
+            String path = c.mapping() != null ? mapping(c.mappingName(), c.mapping()) : null;
+            TextResolver resolver = resolver(c.text(), path);
+            assertNotNull(resolver, c.toString());
+            assertEquals(c.expected(), resolver.resolve(image(c.image()), EXIF), c.toString());
+        }
+    }
+
+    private static TextResolver resolver(String text, String mappingPath) throws IOException {
+        WatermarkSettings settings = new WatermarkSettings();
+        settings.text = text;
+        settings.textMappingPath = mappingPath;
+        return TextResolver.forSettings(settings);
+    }
+
+    private File image(String name) {
+        return new File(new File(dir, "photos"), name);
+    }
+
+    /** Writes the mapping into its own subfolder so no two cases share a cache entry. */
+    private String mapping(String name, String content) throws IOException {
+        File folder = new File(dir, "mapping-" + files++);
+        Files.createDirectories(folder.toPath());
+        File file = new File(folder, name);
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+}
@@ -0,0 +1,318 @@
+package com.mywatermark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end export benchmark over a {@link SyntheticCorpus}.
+ * <p>
+ * Runs the same path as an export from the UI, headless: the corpus folder is imported with
+ * the folder import filter, then {@link MainViewController.ExportTask} renders and writes every
+ * file. Reports images/s, megapixels/s, per-file latency percentiles, peak heap, GC time and
+ * output bytes, and stores them as one JSON file per run, named after the commit, so runs
+ * from different commits can be compared. With {@code --baseline} the run is compared against
+ * an earlier result and exits with status 1 when it is slower by more than the tolerance.
+ * <pre>
+ * java -cp &lt;classpath&gt; com.mywatermark.ThroughputBenchmark [--images 60] [--seed 42]
+ *      [--corpus target/benchmark-corpus] [--results benchmark-results] [--format PNG|JPEG]
+ *      [--sink Folder|ZIP|TAR] [--settings template.json] [--baseline result.json] [--tolerance 0.1]
+ * </pre>
+ * {@code mvn -Pbenchmark verify} builds the application and runs it with the defaults.
+ */
+public final class ThroughputBenchmark {
+
+    private static final Logger logger = Logger.getLogger(ThroughputBenchmark.class.getName());
+
+    private static final int WARMUP_FILES = 6;
+    private static final long HEAP_SAMPLE_INTERVAL_MS = 5;
+
+    /** One benchmark run, as stored in the results file. */
+    static final class Result {
+        String timestamp;
+        String commit;
+        String javaVersion;
+        int processors;
+        long maxHeapBytes;
+
+        long seed;
+        int images;
+        double megapixels;
+        long inputBytes;
+        String format;
+        String sink;
+        String mode;
+
+        int failed;
+        double elapsedSeconds;
+        double imagesPerSecond;
+        double megapixelsPerSecond;
+        double latencyP50Millis;
+        double latencyP90Millis;
+        double latencyP99Millis;
+        double latencyMaxMillis;
+        long peakHeapBytes;
+        long gcMillis;
+        long gcCount;
+        long outputBytes;
+    }
+
+    private ThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int images = 60;
+        long seed = 42;
+        File corpusDir = new File("target/benchmark-corpus");
+        File resultsDir = new File("benchmark-results");
+        File settingsFile = null;
+        File baselineFile = null;
+        double tolerance = 0.10;
+        ExportOptions options = new ExportOptions();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--images" -> images = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--corpus" -> corpusDir = new File(value);
+                    case "--results" -> resultsDir = new File(value);
+                    case "--format" -> options.format = value;
+                    case "--sink" -> options.sink = value;
+                    case "--settings" -> settingsFile = new File(value);
+                    case "--baseline" -> baselineFile = new File(value);
+                    case "--tolerance" -> tolerance = Double.parseDouble(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+                i++;
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing value for " + args[args.length - 1]);
+            System.err.println("Usage: ThroughputBenchmark [--images n] [--seed n] [--corpus dir] [--results dir] "
+                    + "[--format PNG|JPEG] [--sink Folder|ZIP|TAR] [--settings template.json] "
+                    + "[--baseline result.json] [--tolerance fraction]");
+            System.exit(2);
+            return;
+        }
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        WatermarkSettings settings = settingsFile != null ? readJson(gson, settingsFile, WatermarkSettings.class) : defaultSettings();
+        SyntheticCorpus corpus = SyntheticCorpus.open(corpusDir, seed, images);
+
+        Result result = run(corpus, settings, options);
+        result.seed = seed;
+        result.commit = commit();
+        Files.createDirectories(resultsDir.toPath());
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        File resultFile = new File(resultsDir, "throughput-" + stamp + "-" + result.commit + ".json");
+        try (Writer writer = Files.newBufferedWriter(resultFile.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(result, writer);
+        }
+        System.out.printf("%d images, %.1f MP in %.2f s: %.2f images/s, %.1f MP/s, p50 %.0f ms, p99 %.0f ms, "
+                        + "peak heap %d MB, GC %d ms (%d), %d MB written, %d failed%n",
+                result.images, result.megapixels, result.elapsedSeconds, result.imagesPerSecond, result.megapixelsPerSecond,
+                result.latencyP50Millis, result.latencyP99Millis, result.peakHeapBytes >> 20, result.gcMillis, result.gcCount,
+                result.outputBytes >> 20, result.failed);
+        System.out.println("Result written to " + resultFile);
+
+        if (baselineFile != null && !compare(readJson(gson, baselineFile, Result.class), result, tolerance)) {
+            System.exit(1);
+        }
+        System.exit(result.failed > 0 ? 1 : 0);
+    }
+
+    private static Result run(SyntheticCorpus corpus, WatermarkSettings settings, ExportOptions options) throws Exception {
+        // Exactly the files the manifest describes, so the totals below match what was exported
+        List<File> files = corpus.getEntries().stream().map(e -> new File(corpus.getDirectory(), e.name)).toList();
+
+        Path outputRoot = Files.createTempDirectory("watermark-benchmark");
+        try {
+            // Let the JIT compile the decode, render and encode paths before anything is measured
+            File warmupDir = Files.createDirectory(outputRoot.resolve("warmup")).toFile();
+            new MainViewController.ExportTask(files.subList(0, Math.min(WARMUP_FILES, files.size())),
+                    warmupDir, settings, options, 0).call();
+            System.gc();
+
+            File outputDir = Files.createDirectory(outputRoot.resolve("output")).toFile();
+            MainViewController.ExportTask task = new MainViewController.ExportTask(files, outputDir, settings, options, 0);
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            HeapSampler heap = new HeapSampler(memory);
+            long gcMillisBefore = gcMillis();
+            long gcCountBefore = gcCount();
+            heap.start();
+            long start = System.nanoTime();
+            task.call();
+            long elapsed = System.nanoTime() - start;
+            heap.interrupt();
+            heap.join();
+
+            ExportProgress.Snapshot snapshot = task.getExportProgress().snapshot();
+            long[] latencies = task.getExportProgress().latencies();
+            Result result = new Result();
+            result.timestamp = LocalDateTime.now().toString();
+            result.javaVersion = System.getProperty("java.vm.name") + " " + System.getProperty("java.runtime.version");
+            result.processors = Runtime.getRuntime().availableProcessors();
+            result.maxHeapBytes = Runtime.getRuntime().maxMemory();
+            result.images = files.size();
+            result.megapixels = corpus.totalPixels() / 1e6;
+            result.inputBytes = files.stream().mapToLong(File::length).sum();
+            result.format = options.format;
+            result.sink = options.sink;
+            result.mode = WatermarkRenderer.normalizeMode(settings.mode);
+            result.failed = snapshot.failed();
+            result.elapsedSeconds = elapsed / 1e9;
+            result.imagesPerSecond = files.size() / result.elapsedSeconds;
+            result.megapixelsPerSecond = result.megapixels / result.elapsedSeconds;
+            result.latencyP50Millis = percentile(latencies, 0.50);
+            result.latencyP90Millis = percentile(latencies, 0.90);
+            result.latencyP99Millis = percentile(latencies, 0.99);
+            result.latencyMaxMillis = percentile(latencies, 1.0);
+            result.peakHeapBytes = heap.peak;
+            result.gcMillis = gcMillis() - gcMillisBefore;
+            result.gcCount = gcCount() - gcCountBefore;
+            result.outputBytes = snapshot.bytesWritten();
+            return result;
+        } finally {
+            deleteRecursively(outputRoot);
+        }
+    }
+
+    /**
+     * Prints how {@code current} compares to {@code baseline} and returns {@code false} when
+     * throughput dropped or p99 latency grew by more than {@code tolerance}.
+     */
+    private static boolean compare(Result baseline, Result current, double tolerance) {
+        if (baseline.images != current.images || baseline.seed != current.seed
+                || !String.valueOf(baseline.format).equals(String.valueOf(current.format))) {
+            System.out.println("Baseline " + baseline.commit + " used a different corpus or format; not comparing.");
+            return true;
+        }
+        boolean ok = true;
+        ok &= report("images/s", baseline.imagesPerSecond, current.imagesPerSecond, true, tolerance);
+        ok &= report("MP/s", baseline.megapixelsPerSecond, current.megapixelsPerSecond, true, tolerance);
+        ok &= report("p99 ms", baseline.latencyP99Millis, current.latencyP99Millis, false, tolerance);
+        report("peak heap MB", baseline.peakHeapBytes >> 20, current.peakHeapBytes >> 20, false, Double.POSITIVE_INFINITY);
+        report("GC ms", baseline.gcMillis, current.gcMillis, false, Double.POSITIVE_INFINITY);
+        System.out.println(ok ? "No regression against " + baseline.commit : "REGRESSION against " + baseline.commit);
+        return ok;
+    }
+
+    private static boolean report(String metric, double baseline, double current, boolean higherIsBetter, double tolerance) {
+        double change = baseline == 0 ? 0 : (current - baseline) / baseline;
+        boolean regressed = higherIsBetter ? change < -tolerance : change > tolerance;
+        System.out.printf("  %-13s %10.2f -> %10.2f  (%+.1f%%)%s%n", metric, baseline, current, change * 100,
+                regressed ? "  <-- regression" : "");
+        return !regressed;
+    }
+
+    /** Nearest-rank percentile of sorted nanosecond values, in milliseconds. */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))] / 1e6;
+    }
+
+    private static WatermarkSettings defaultSettings() {
+        WatermarkSettings settings = new WatermarkSettings();
+        settings.mode = "TEXT";
+        settings.text = "© Benchmark {basename}";
+        settings.color = "0xffffffff";
+        settings.opacity = 0.6;
+        settings.fontSize = 64;
+        settings.rotation = -15;
+        settings.autoPlacement = true;
+        settings.autoColor = true;
+        return settings;
+    }
+
+    private static <T> T readJson(Gson gson, File file, Class<T> type) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            T value = gson.fromJson(reader, type);
+            if (value == null) {
+                throw new IOException("Empty JSON file: " + file);
+            }
+            return value;
+        }
+    }
+
+    /** The short hash of the checked out commit, or "unknown" outside a git work tree. */
+    private static String commit() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            String output = new String(git.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (git.waitFor(10, TimeUnit.SECONDS) && git.exitValue() == 0 && output.matches("[0-9a-f]+")) {
+                return output;
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "git is not available", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "unknown";
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(t -> t > 0).sum();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(c -> c > 0).sum();
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Samples used heap at a fixed rate. The memory pools' own peaks are per pool and reached at
+     * different times, so their sum would overstate how much heap the export really needed.
+     */
+    private static final class HeapSampler extends Thread {
+        private final MemoryMXBean memory;
+        private volatile long peak;
+
+        HeapSampler(MemoryMXBean memory) {
+            super("heap-sampler");
+            setDaemon(true);
+            this.memory = memory;
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(HEAP_SAMPLE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+        }
+    }
+}
@@ -10,6 +10,15 @@ set SCRIPT_DIR=%~dp0
 REM Set the path to the fat JAR file
 set JAR_PATH=%SCRIPT_DIR%image-watermarker\target\image-watermarker-1.0-SNAPSHOT.jar
 
+REM Use the class data sharing archive recorded by "mvn -Pappcds package", if there is one, for
+REM faster startup. It was recorded with the java on the PATH and the command line below; the JVM
+REM warns "Unable to use shared archive" and starts without it if either has changed since.
+set CDS_OPTS=
+if exist "%SCRIPT_DIR%image-watermarker\target\app-cds.jsa" (
+    set CDS_OPTS=-XX:SharedArchiveFile="%SCRIPT_DIR%image-watermarker\target\app-cds.jsa"
+    echo Using class data sharing archive image-watermarker\target\app-cds.jsa
+)
+
 REM Check if required file exists
 if not exist "%JAR_PATH%" (
     echo Error: JAR file not found at "%JAR_PATH%"
@@ -32,7 +41,8 @@ echo Attempting to run Photo Watermark Application with JavaFX options...
 echo.
 
 REM Note: This will only work if you have JavaFX SDK separately installed
-java --module-path "%SCRIPT_DIR%image-watermarker\target\lib" --add-modules javafx.controls,javafx.fxml,javafx.swing --add-opens javafx.controls/javafx.scene.control.skin=ALL-UNNAMED --add-opens javafx.graphics/javafx.scene=ALL-UNNAMED --add-opens javafx.base/com.sun.javafx.event=ALL-UNNAMED -cp "%JAR_PATH%" com.mywatermark.App
+REM Started with -jar, as the class data sharing archive was recorded
+java %CDS_OPTS% --module-path "%SCRIPT_DIR%image-watermarker\target\lib" --add-modules javafx.controls,javafx.fxml,javafx.swing --add-opens javafx.controls/javafx.scene.control.skin=ALL-UNNAMED --add-opens javafx.graphics/javafx.scene=ALL-UNNAMED --add-opens javafx.base/com.sun.javafx.event=ALL-UNNAMED -jar "%JAR_PATH%"
 
 REM If the above fails, try running directly from fat JAR (this might work if JavaFX is properly embedded)
 if errorlevel 1 (